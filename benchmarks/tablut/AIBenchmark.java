@@ -0,0 +1,88 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the AI's static evaluation and of a full search to
+ * the default depth, on each of the Positions.
+ *
+ * @author Junyi Cao
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AIBenchmark {
+
+    /**
+     * The name of the position benchmarked.
+     */
+    @Param({"INITIAL_BOARD_STATE", "MOVE_LIST_TEST", "STATIC_VALUE_1",
+            "BLACK_ONE_MOVE_WIN5", "WHITE_ONE_MOVE_WIN2"})
+    public String position;
+
+    /**
+     * Set up the position.
+     */
+    @Setup
+    public void setUp() {
+        _board = Positions.board(position);
+    }
+
+    /**
+     * A single-threaded AI whose transposition table is emptied before
+     * each search, so that every search does the same work.
+     */
+    @State(Scope.Thread)
+    public static class Searching {
+        /**
+         * The AI searching.
+         */
+        private final AI _ai = new AI();
+
+        /**
+         * Empty the transposition table.
+         */
+        @Setup(Level.Invocation)
+        public void clearTable() {
+            _ai.clearTable();
+        }
+    }
+
+    /**
+     * Evaluate the position statically.
+     */
+    @Benchmark
+    public int staticScore() {
+        return AI.staticScore(_board);
+    }
+
+    /**
+     * Search the position to AI.DEFAULT_SEARCH_DEPTH, with the AI in
+     * SEARCHING.
+     */
+    @Benchmark
+    public Move findMove(Searching searching) {
+        return searching._ai.findMove(_board, 0);
+    }
+
+    /**
+     * The board benchmarked.
+     */
+    private Board _board;
+}
@@ -0,0 +1,119 @@
+package tablut;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the Board operations the search spends its time in,
+ * on each of the Positions.
+ *
+ * @author Junyi Cao
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+
+    /**
+     * The name of the position benchmarked.
+     */
+    @Param({"INITIAL_BOARD_STATE", "MOVE_LIST_TEST", "STATIC_VALUE_1",
+            "BLACK_ONE_MOVE_WIN5", "WHITE_ONE_MOVE_WIN2"})
+    public String position;
+
+    /**
+     * Set up the position and its legal moves.
+     */
+    @Setup
+    public void setUp() {
+        _board = Positions.board(position);
+        _count = _board.legalMoves(_board.turn(), _legal, 0);
+    }
+
+    /**
+     * Make and undo one legal move, taking each in turn.
+     */
+    @Benchmark
+    public long makeMoveUndo() {
+        int move = _legal[_next];
+        _next = _next + 1 == _count ? 0 : _next + 1;
+        _board.makeMove(move);
+        long key = _board.key();
+        _board.undo();
+        return key;
+    }
+
+    /**
+     * Generate the legal moves as a list of Moves.
+     */
+    @Benchmark
+    public List<Move> legalMoves() {
+        return _board.legalMoves(_board.turn());
+    }
+
+    /**
+     * Generate the legal moves as packed moves, as the search does.
+     */
+    @Benchmark
+    public int legalMovesPacked() {
+        return _board.legalMoves(_board.turn(), _moves, 0);
+    }
+
+    /**
+     * Encode the board as a string.
+     */
+    @Benchmark
+    public String encodedBoard() {
+        return _board.encodedBoard();
+    }
+
+    /**
+     * Collect the squares of both sides' pieces, sinking them in BH.
+     */
+    @Benchmark
+    public void pieceLocations(Blackhole bh) {
+        bh.consume(_board.pieceLocations(Piece.WHITE));
+        bh.consume(_board.pieceLocations(Piece.BLACK));
+    }
+
+    /**
+     * The board benchmarked.
+     */
+    private Board _board;
+
+    /**
+     * The legal moves from _board, packed.
+     */
+    private final int[] _legal = new int[Board.MAX_MOVES];
+
+    /**
+     * The number of moves in _legal.
+     */
+    private int _count;
+
+    /**
+     * Index in _legal of the next move to make.
+     */
+    private int _next;
+
+    /**
+     * Space for the moves generated by legalMovesPacked.
+     */
+    private final int[] _moves = new int[Board.MAX_MOVES];
+}
@@ -0,0 +1,42 @@
+package tablut;
+
+import java.util.Map;
+
+import static tablut.TablutTests.*;
+
+/**
+ * The positions the benchmarks run on: those defined in TablutTests,
+ * by the names of their fields there, each with black to move.
+ *
+ * @author Junyi Cao
+ */
+final class Positions {
+
+    /**
+     * Return a new board holding the position named NAME.
+     */
+    static Board board(String name) {
+        Piece[][] rows = POSITIONS.get(name);
+        if (rows == null) {
+            throw new IllegalArgumentException("unknown position: " + name);
+        }
+        Board board = new Board();
+        for (int col = 0; col < Board.SIZE; col += 1) {
+            for (int row = 0; row < Board.SIZE; row += 1) {
+                board.put(rows[Board.SIZE - 1 - row][col],
+                        Square.sq(col, row));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * The positions, by name.
+     */
+    private static final Map<String, Piece[][]> POSITIONS = Map.of(
+            "INITIAL_BOARD_STATE", INITIAL_BOARD_STATE,
+            "MOVE_LIST_TEST", MOVE_LIST_TEST,
+            "STATIC_VALUE_1", STATIC_VALUE_1,
+            "BLACK_ONE_MOVE_WIN5", BLACK_ONE_MOVE_WIN5,
+            "WHITE_ONE_MOVE_WIN2", WHITE_ONE_MOVE_WIN2);
+}
@@ -1,14 +1,23 @@
 package tablut;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static tablut.Board.THRONE;
 import static tablut.Move.*;
 import static tablut.Piece.*;
-import static tablut.Square.sq;
-import static tablut.Utils.*;
+import static tablut.Square.INVERSE_SYMMETRIES;
+import static tablut.Square.ROOK_INDICES;
 
 /**
  * A Player that
@@ -20,43 +29,303 @@ class AI extends Player {
 
     /**
      * A position-score magnitude indicating a win (for white if positive,
-     * black if negative).
+     * black if negative).  The search scores a win found P plies from
+     * the root as WINNING_VALUE - P, so that nearer wins (and more
+     * distant losses) are preferred.
      */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
     /**
-     * A position-score magnitude indicating a forced win in a subsequent
-     * move.  This differs from WINNING_VALUE to avoid putting off wins.
+     * The largest number of plies from the root of a search.
      */
-    private static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
+    static final int MAX_PLY = 128;
+    /**
+     * The least magnitude of the score of a win found by the search:
+     * every score at least this large is a proven win (or, negated, a
+     * proven loss), and no heuristic score reaches it.
+     */
+    static final int WIN_THRESHOLD = WINNING_VALUE - MAX_PLY;
+    /**
+     * The greatest magnitude of a heuristic score.  Static scores are
+     * clamped to it, so that they are never mistaken for proven wins.
+     */
+    static final int MAX_HEURISTIC_VALUE = WIN_THRESHOLD - 2;
+    /**
+     * A position-score magnitude indicating a win expected in a
+     * subsequent move, but not proven.  Material and other terms are
+     * added to it, so it lies well below MAX_HEURISTIC_VALUE.
+     */
+    static final int WILL_WIN_VALUE = MAX_HEURISTIC_VALUE - 1000;
+    /**
+     * Half the width of the aspiration window around the previous
+     * iteration's score.
+     */
+    static final int ASPIRATION_WINDOW = 8;
     /**
      * A magnitude greater than a normal value.
      */
-    private static final int INFTY = Integer.MAX_VALUE;
+    static final int INFTY = Integer.MAX_VALUE;
+
+    /**
+     * The ways an AI can spread its search over several threads.
+     */
+    enum Engine {
+        /**
+         * Lazy SMP: independent Searchers sharing a transposition table.
+         */
+        SMP,
+        /**
+         * Young Brothers Wait: one search whose subtrees are forked
+         * (see YoungBrothersSearch).
+         */
+        YBWC
+    }
 
     /**
      * A new AI with no piece or controller (intended to produce
      * a template).
      */
     AI() {
-        this(null, null);
+        this(TranspositionTable.DEFAULT_MEGABYTES, 1, Engine.SMP);
+    }
+
+    /**
+     * A new AI with no piece or controller (intended to produce
+     * a template) whose transposition table takes TABLEMEGABYTES
+     * megabytes and which searches with THREADS threads using ENGINE.
+     */
+    AI(int tableMegabytes, int threads, Engine engine) {
+        this(null, null, tableMegabytes, threads, engine);
     }
 
     /**
      * A new AI playing PIECE under control of CONTROLLER.
      */
     AI(Piece piece, Controller controller) {
+        this(piece, controller, TranspositionTable.DEFAULT_MEGABYTES, 1,
+                Engine.SMP);
+    }
+
+    /**
+     * A new AI playing PIECE under control of CONTROLLER, whose
+     * transposition table takes TABLEMEGABYTES megabytes and which
+     * searches with THREADS threads using ENGINE.
+     */
+    AI(Piece piece, Controller controller, int tableMegabytes,
+       int threads, Engine engine) {
         super(piece, controller);
+        _tableMegabytes = tableMegabytes;
+        _threads = Math.max(1, threads);
+        _engine = engine;
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        AI ai = new AI(piece, controller, _tableMegabytes, _threads,
+                _engine);
+        ai.setTablebase(_tablebase);
+        ai.setOpeningBook(_book);
+        ai.setPondering(_ponder);
+        ai._sharedTable = _sharedTable;
+        return ai;
+    }
+
+    /**
+     * Make all the players I create from now on, as a template, search
+     * with one transposition table of my size, allocated now, instead
+     * of a table each.  Entries are keyed by position alone, so players
+     * in unrelated games can share them.
+     */
+    void shareTable() {
+        _sharedTable = new TranspositionTable(_tableMegabytes);
+    }
+
+    /**
+     * Play moves from BOOK (null for none), when it has any for the
+     * current position, without searching.
+     */
+    void setOpeningBook(OpeningBook book) {
+        _book = book;
+    }
+
+    /**
+     * Use TABLEBASE (null for none) to play the positions it covers
+     * without searching.
+     */
+    void setTablebase(Tablebase tablebase) {
+        _tablebase = tablebase;
     }
 
     @Override
     String myMove() {
-        System.out.println("* " + findMove());
-        return findMove().toString();
+        return announce(findMove());
+    }
+
+    @Override
+    CompletableFuture<String> myMoveAsync() {
+        Board board = new Board(board());
+        int limit = _controller.timeLimit();
+        CompletableFuture<Move> search;
+        if (_pondering != null && _ponderHit
+                && !_pondering.isCancelled()
+                && board.key() == _ponderKey) {
+            CompletableFuture<Move> pondering = _pondering;
+            search = pondering.thenCompose(move -> {
+                if (move == null) {
+                    return findMoveAsync(board, limit);
+                }
+                _stats = _ponderStats;
+                return CompletableFuture.completedFuture(move);
+            });
+        } else {
+            stopPondering();
+            search = findMoveAsync(board, limit);
+        }
+        _pondering = null;
+        return search.thenApply(this::announce);
+    }
+
+    @Override
+    void moveMade(Move move) {
+        if (board().winner() != null) {
+            stopPondering();
+        } else if (board().turn() == myPiece()) {
+            if (_pondering != null && move.equals(_expected)) {
+                ponderHit();
+            } else {
+                stopPondering();
+            }
+        } else if (_ponder && move.equals(_stats.move())
+                && (myPiece() == WHITE ? _controller.manualBlack()
+                    : _controller.manualWhite())) {
+            startPondering();
+        }
+    }
+
+    @Override
+    boolean cancelMove() {
+        CompletableFuture<Move> pending = _pending;
+        if (pending == null || !pending.cancel(false)) {
+            return false;
+        }
+        _stop.set(true);
+        return true;
+    }
+
+    @Override
+    void close() {
+        stopPondering();
+        cancelMove();
+        synchronized (this) {
+            _queue = _queue.thenRun(this::release);
+        }
+    }
+
+    /**
+     * Shut down my helper threads or YBWC search and drop my
+     * transposition table and Searchers, which are allocated again if I
+     * search again.  Runs after my searches requested through
+     * findMoveAsync have ended.
+     */
+    private void release() {
+        if (_helpers != null) {
+            _helpers.shutdown();
+            _helpers = null;
+        }
+        if (_youngBrothers != null) {
+            _youngBrothers.close();
+            _youngBrothers = null;
+        }
+        _searchers = null;
+        _table = null;
+    }
+
+    /**
+     * Search on my opponent's time: after my move, go on searching the
+     * position after the reply my last search expected (the second move
+     * of its principal variation), as if it had been made, until the
+     * actual reply arrives through moveMade.  If it is the expected one
+     * (a ponder hit), that search becomes the search for my next move,
+     * with its time limit counted from the reply; otherwise it is
+     * abandoned.  Either way, what it stored in my transposition table
+     * remains.  Pondering is done only against manual players.
+     */
+    void setPondering(boolean on) {
+        _ponder = on;
+    }
+
+    /**
+     * Return true iff I am pondering.
+     */
+    boolean pondering() {
+        return _pondering != null;
+    }
+
+    /**
+     * Start pondering the reply that my last search expected to the
+     * move I just made on board(), if it expected one.
+     */
+    private void startPondering() {
+        List<Move> pv = _stats.pv();
+        if (pv.size() < 2 || !board().isLegal(pv.get(1))) {
+            return;
+        }
+        Board position = new Board(board());
+        position.makeMove(pv.get(1));
+        _expected = pv.get(1);
+        _ponderKey = position.key();
+        _ponderHit = false;
+        _pondering = submit(position, 0,
+                maxDepth(_controller.timeLimit()), true);
+    }
+
+    /**
+     * Turn my pondering into the search for my move, stopping it once
+     * my time limit, if any, has passed from now.
+     */
+    private void ponderHit() {
+        _ponderHit = true;
+        int limit = _controller.timeLimit();
+        if (limit > 0) {
+            CompletableFuture<Move> pondering = _pondering;
+            CompletableFuture.delayedExecutor(limit, TimeUnit.MILLISECONDS)
+                    .execute(() -> stop(pondering));
+        }
+    }
+
+    /**
+     * Abandon my pondering, if any.
+     */
+    private void stopPondering() {
+        if (_pondering != null) {
+            cancelMove();
+            _pondering = null;
+        }
+    }
+
+    /**
+     * Stop the search whose future is SEARCH, if it is still the last
+     * one requested, letting it return the move of its deepest completed
+     * iteration.
+     */
+    private synchronized void stop(Future<Move> search) {
+        if (_pending == search) {
+            _stop.set(true);
+        }
+    }
+
+    /**
+     * Log the statistics of MOVE, which I found, and report it.  Return
+     * it as a command.
+     */
+    private String announce(Move move) {
+        _controller.logStats(myPiece(), _stats);
+        _controller.output().println("* " + move);
+        return move.toString();
+    }
+
+    @Override
+    SearchStats stats() {
+        return _stats.move() == null ? null : _stats;
     }
 
     @Override
@@ -69,218 +338,406 @@ class AI extends Player {
      * is a move.
      */
     private Move findMove() {
-        Board b = new Board(board());
-        _lastFoundMove = null;
-        int sense = myPiece() == WHITE ? 1 : -1;
-        findMove(b, maxDepth(b), true, sense, -INFTY, INFTY);
-        return _lastFoundMove;
+        return findMove(board(), _controller.timeLimit());
     }
 
     /**
-     * The move found by the last call to one of the ...FindMove methods
-     * below.
+     * Return a move from position BOARD for the side to move, assuming
+     * there is a move, searching for at most LIMIT milliseconds if LIMIT
+     * is positive.  Searches by iterative deepening: one full search at
+     * each depth 1, 2, ..., up to DEFAULT_SEARCH_DEPTH, or, if there is
+     * a time limit, until that time is used up.  The result is the move
+     * found by the deepest search that completed.  With the SMP engine and
+     * more than one thread, the extra threads search the same position
+     * on their own copies of BOARD, starting at alternate depths, and
+     * help only through the shared transposition table.  The YBWC
+     * engine instead splits a single search among its threads.
+     * Positions in my opening book or decided in my tablebase, if any,
+     * are not searched.  Book moves are chosen at random, by weight,
+     * using my controller's random numbers.  Afterwards, stats() tells
+     * what was done.
      */
-    private Move _lastFoundMove;
+    Move findMove(Board board, int limit) {
+        SearchStats stats = new SearchStats();
+        Move move = findMove(board, limit, maxDepth(limit), null, stats);
+        _stats = stats;
+        return move;
+    }
 
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _lastFoundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * Return a future for the result of findMove(BOARD, LIMIT), which
+     * is found on a copy of BOARD taken now, in my controller's compute
+     * pool if it has one, and otherwise in a thread of my own.
+     * Cancelling the future through cancelMove stops the search as soon
+     * as possible.  Searches requested while another is still running,
+     * if only to wind down after being cancelled, wait for it.
      */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        if (board.winner() != null) {
-            return board.winner() == WHITE ? WINNING_VALUE : -WINNING_VALUE;
-        } else if (depth == 0) {
-            return staticScore(board);
-        } else {
-            if (sense == 1) {
-                List<Move> moves = board.legalMoves(WHITE);
-                for (Move mv : moves) {
-                    board.makeMove(mv);
-                    int a = Math.max(alpha, findMove(
-                            board, depth - 1, false, -1, alpha, beta));
-                    if (a > alpha) {
-                        alpha = a;
-                        if (saveMove) {
-                            _lastFoundMove = mv;
-                        }
-                    }
-                    if (alpha >= beta) {
-                        board.undo();
-                        return beta;
-                    }
-                    board.undo();
+    CompletableFuture<Move> findMoveAsync(Board board, int limit) {
+        return submit(new Board(board), limit, maxDepth(limit), false);
+    }
+
+    /**
+     * Return a future for the move found from POSITION, once any
+     * earlier search has ended, as for findMoveAsync, searching for at
+     * most LIMIT milliseconds if LIMIT is positive and to at most
+     * MAXDEPTH plies.  The statistics of the search, unless it is
+     * cancelled, go to _ponderStats if PONDER, and to _stats otherwise.
+     */
+    private CompletableFuture<Move> submit(Board position, int limit,
+                                           int maxDepth, boolean ponder) {
+        CompletableFuture<Move> result = new CompletableFuture<>();
+        Runnable search = () -> {
+            if (result.isCancelled()) {
+                return;
+            }
+            try {
+                SearchStats stats = new SearchStats();
+                Move move = findMove(position, limit, maxDepth, result,
+                        stats);
+                if (result.isCancelled()) {
+                    return;
+                } else if (ponder) {
+                    _ponderStats = stats;
+                } else {
+                    _stats = stats;
                 }
-                return alpha;
-            } else if (sense == -1) {
-                List<Move> moves = board.legalMoves(BLACK);
-                for (Move mv : moves) {
-                    board.makeMove(mv);
-                    int b = Math.min(beta, findMove(
-                            board, depth - 1, false, 1, alpha, beta));
-                    if (b < beta) {
-                        beta = b;
-                        if (saveMove) {
-                            _lastFoundMove = mv;
-                        }
-                    }
-                    if (alpha >= beta) {
-                        board.undo();
-                        return alpha;
-                    }
-                    board.undo();
+                result.complete(move);
+            } catch (RuntimeException excp) {
+                result.completeExceptionally(excp);
+            }
+        };
+        Executor executor =
+                _controller == null ? null : _controller.computePool();
+        synchronized (this) {
+            if (executor == null) {
+                if (_thinker == null) {
+                    ThreadPoolExecutor thinker = new ThreadPoolExecutor(1,
+                            1, THINKER_KEEP_ALIVE, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), r -> {
+                                Thread t = new Thread(r, "tablut-ai");
+                                t.setDaemon(true);
+                                return t;
+                            });
+                    thinker.allowCoreThreadTimeOut(true);
+                    _thinker = thinker;
                 }
-                return beta;
-            } else {
-                throw error("Sense: %d which isn't 1 or -1.", sense);
+                executor = _thinker;
             }
+            _pending = result;
+            _queue = _queue.thenRunAsync(search, executor);
         }
+        return result;
     }
 
     /**
-     * Return a heuristically determined maximum search depth
-     * based on characteristics of BOARD.
+     * Return the deepest iteration for a search with time limit LIMIT
+     * (0 for none).
      */
-    private static int maxDepth(Board board) {
-        if (whiteOneMoveWin(board) || blackOneMoveWin(board)) {
-            return 1;
-        } else {
-            return 3;
-        }
+    private static int maxDepth(int limit) {
+        return limit > 0 ? MAX_SEARCH_DEPTH : DEFAULT_SEARCH_DEPTH;
     }
 
     /**
-     * Check whether white can win in one move.
-     *
-     * @param board The current board.
-     * @return whether white can win in one move.
+     * Return findMove(BOARD, LIMIT), but iterating to at most MAXDEPTH
+     * plies and recording what was done in STATS instead of _stats, for
+     * the request whose future is REQUEST, or for a direct call if
+     * REQUEST is null.  If REQUEST is cancelled, stops as soon as
+     * possible, possibly returning null.
      */
-    static boolean whiteOneMoveWin(Board board) {
-        Square king = board.kingPosition();
+    private Move findMove(Board board, int limit, int maxDepth,
+                          Future<Move> request, SearchStats stats) {
+        long start = System.nanoTime();
+        _stop.set(false);
+        if (request != null && request.isCancelled()) {
+            /* cancelMove may have set _stop before it was cleared. */
+            _stop.set(true);
+        }
+        if (_book != null) {
+            Move move = _book.chooseMove(board, n -> _controller == null
+                    ? 0 : _controller.randInt(n));
+            if (move != null) {
+                stats.finish(move, SearchStats.Source.BOOK, 0, 0,
+                        List.of(move), System.nanoTime() - start);
+                return move;
+            }
+        }
+        if (_tablebase != null) {
+            Move move = _tablebase.bestMove(board);
+            if (move != null) {
+                stats.finish(move, SearchStats.Source.TABLEBASE, 0, 0,
+                        List.of(move), System.nanoTime() - start);
+                return move;
+            }
+        }
+        int sense = board.turn() == WHITE ? 1 : -1;
+        if (_searchers == null) {
+            _table = _sharedTable != null ? _sharedTable
+                    : new TranspositionTable(_tableMegabytes);
+            if (_engine == Engine.YBWC) {
+                _youngBrothers = new YoungBrothersSearch(_table, _threads,
+                        _stop);
+            }
+            _searchers = new Searcher[_threads];
+            for (int i = 0; i < _threads; i += 1) {
+                _searchers[i] = new Searcher(_table, _stop);
+            }
+            if (_threads > 1 && _engine == Engine.SMP) {
+                _helpers = Executors.newFixedThreadPool(_threads - 1, r -> {
+                    Thread t = new Thread(r, "tablut-search");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+        }
 
-        int row = king.row();
-        int col = king.col();
-        Square[] edges = new Square[]{
-                sq(8, row), sq(col, 0),
-                sq(0, row), sq(col, 8)};
-        for (Square sq : edges) {
-            if (mv(king, sq) != null
-                    && board.isLegal(mv(king, sq))) {
-                return true;
+        if (_engine == Engine.YBWC) {
+            Move move = _youngBrothers.findMove(board, sense, maxDepth,
+                    limit);
+            _youngBrothers.addStats(stats);
+            finishStats(stats, board, move, _youngBrothers.completedDepth(),
+                    _youngBrothers.value(), start);
+            return move;
+        }
+
+        List<Future<?>> helping = new ArrayList<>();
+        for (int i = 1; i < _threads; i += 1) {
+            Searcher helper = _searchers[i];
+            Board copy = new Board(board);
+            int first = 1 + i % 2;
+            helping.add(_helpers.submit(() -> helper.search(
+                    copy, sense, first, MAX_SEARCH_DEPTH, 0)));
+        }
+        int value = _searchers[0].search(new Board(board), sense, 1,
+                maxDepth, limit);
+        _stop.set(true);
+        stats.add(_searchers[0].stats());
+        for (int i = 1; i < _threads; i += 1) {
+            try {
+                helping.get(i - 1).get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
             }
+            stats.add(_searchers[i].stats());
         }
-        return false;
+        Move move = _searchers[0].bestMove();
+        finishStats(stats, board, move, _searchers[0].completedDepth(),
+                value, start);
+        return move;
     }
 
     /**
-     * Check whether black can win in one move.
-     *
-     * @param board The current board.
-     * @return whether black can win in one move.
+     * Complete STATS, which holds the counts of a search of BOARD to
+     * DEPTH plies that found MOVE, of value VALUE for the side to move,
+     * and began at System.nanoTime() START.
      */
-    static boolean blackOneMoveWin(Board board) {
-        Square king = board.kingPosition();
+    private void finishStats(SearchStats stats, Board board, Move move,
+                             int depth, int value, long start) {
+        stats.finish(move, SearchStats.Source.SEARCH, depth, value,
+                principalVariation(board, move, depth),
+                System.nanoTime() - start);
+    }
 
-        HashSet<Square> blackSq = board.pieceLocations(BLACK);
-        ArrayList<Square> absents = kingAdjHostile(board, king, true);
-        ArrayList<Square> presents = kingAdjHostile(board, king, false);
-        if (!board.isKingInThrone()) {
-            for (Square presentBlack : presents) {
-                int dir = presentBlack.direction(king);
-                for (Square black : blackSq) {
-                    Move move = mv(black, king.rookMove(dir, 1));
-                    if (move != null
-                            && board.isLegal(move)) {
-                        return true;
-                    }
-                }
-            }
-        } else if (king == THRONE) {
-            if (presents.size() < 3) {
-                return false;
-            } else if (presents.size() == 3) {
-                for (Square black : blackSq) {
-                    Move move = mv(black, absents.get(0));
-                    if (move != null
-                            && board.isLegal(move)) {
-                        return true;
-                    }
-                }
-            }
-        } else {
-            if (presents.size() < 2) {
-                return false;
-            } else if (presents.size() == 2) {
-                Square absent;
-                if (absents.get(0) == THRONE) {
-                    absent = absents.get(1);
-                } else if (absents.get(1) == THRONE) {
-                    absent = absents.get(0);
-                } else {
-                    throw error("Can't reach here!");
-                }
-                for (Square black : blackSq) {
-                    Move move = mv(black, absent);
-                    if (move != null
-                            && board.isLegal(move)) {
-                        return true;
-                    }
-                }
-            }
+    /**
+     * Return the principal variation from BOARD that starts with FIRST:
+     * the line of best moves recorded in my transposition table, at most
+     * LENGTH moves long (but always including FIRST).  The line ends
+     * early at a position with no recorded move, or a recorded move
+     * that is not legal there (after a key collision), or the end of
+     * the game.  Does not modify BOARD.
+     */
+    private List<Move> principalVariation(Board board, Move first,
+                                          int length) {
+        List<Move> pv = new ArrayList<>();
+        Board copy = new Board(board);
+        Move move = first;
+        while (copy.winner() == null && copy.isLegal(move)
+                && (pv.isEmpty() || pv.size() < length)) {
+            pv.add(move);
+            copy.makeMove(move);
+            int symmetry = copy.canonicalSymmetry();
+            long entry = _table.probe(copy.key(symmetry));
+            move = entry == TranspositionTable.MISS
+                    || TranspositionTable.move(entry) == 0 ? null
+                    : mv(transform(TranspositionTable.move(entry),
+                            INVERSE_SYMMETRIES[symmetry]));
         }
-        return false;
+        return pv;
     }
 
     /**
-     * Return a heuristic value for BOARD.
+     * Forget the positions stored in my transposition table (the
+     * shared one, if any), so that my next search does not benefit
+     * from earlier ones.
      */
-    private static int staticScore(Board board) {
-        int score = 0;
-        if (board.kingPosition().isEdge()) {
-            score = WINNING_VALUE;
-        } else if (board.kingPosition() == null) {
-            score = -WINNING_VALUE;
-        } else {
-            score += kingPosValue(board);
-            int whites = board.pieceLocations(WHITE).size();
-            int blacks = board.pieceLocations(BLACK).size();
-            score += (whites + 7 - blacks);
+    void clearTable() {
+        if (_table != null) {
+            _table.clear();
         }
-        return score;
     }
 
     /**
-     * Whether KING can move to EDGE in two continuous moves.
-     * Preconditions: KING cannot move to EDGE in one step.
-     *
-     * @param board The current board.
-     * @return How many ways can king move to edge in two moves.
+     * Return the number of positions visited, by all threads, during
+     * the last call to findMove.
+     */
+    long nodes() {
+        return _stats.nodes();
+    }
+
+    /**
+     * ESCAPE_VALUES[D] is the bonus for a king D moves from an edge,
+     * when it cannot reach one in one move; doubled when white is to
+     * move.
+     */
+    private static final int[] ESCAPE_VALUES = {0, 0, 3, 1, 0};
+
+    /**
+     * Depth searched when there is no time limit.  Quiescence search
+     * extends it through captures and wins.
+     */
+    static final int DEFAULT_SEARCH_DEPTH = 4;
+
+    /**
+     * Deepest iteration tried when searching against a time limit.
+     */
+    static final int MAX_SEARCH_DEPTH = 64;
+
+    /**
+     * Size of my transposition table, in megabytes.
+     */
+    private final int _tableMegabytes;
+
+    /**
+     * Number of threads searching for each of my moves.
+     */
+    private final int _threads;
+
+    /**
+     * How my threads divide the search.
+     */
+    private final Engine _engine;
+
+    /**
+     * Exact values of positions with few pieces, or null.
+     */
+    private Tablebase _tablebase;
+
+    /**
+     * Moves for positions near the start of the game, or null.
+     */
+    private OpeningBook _book;
+
+    /**
+     * Results of earlier searches, shared by all my threads and moves in
+     * a game.  Allocated when first needed.
+     */
+    private TranspositionTable _table;
+
+    /**
+     * The table shared by the players made from my template, or null
+     * if each has its own.
+     */
+    private TranspositionTable _sharedTable;
+
+    /**
+     * One Searcher per thread; the first runs in the thread calling
+     * findMove.
+     */
+    private Searcher[] _searchers;
+
+    /**
+     * My search, if I use the YBWC engine.
+     */
+    private YoungBrothersSearch _youngBrothers;
+
+    /**
+     * Runs the helper Searchers, or null if I have only one thread.
+     */
+    private ExecutorService _helpers;
+
+    /**
+     * Set to stop all my Searchers.
+     */
+    private final AtomicBoolean _stop = new AtomicBoolean();
+
+    /**
+     * Runs the searches requested through findMoveAsync when my
+     * controller has no compute pool.  Allocated when first needed.
+     */
+    private ExecutorService _thinker;
+
+    /**
+     * Completes when the last search requested through findMoveAsync
+     * has ended, so that the next one, which may run in another thread
+     * of a shared pool, starts only then.
+     */
+    private CompletableFuture<Void> _queue =
+            CompletableFuture.completedFuture(null);
+
+    /**
+     * The future of the last search requested through findMoveAsync, or
+     * null.
+     */
+    private volatile CompletableFuture<Move> _pending;
+
+    /**
+     * Seconds _thinker's thread is kept while it has nothing to do.
+     */
+    private static final long THINKER_KEEP_ALIVE = 10;
+
+    /**
+     * What the search for my last move, or the last call to findMove,
+     * did.
+     */
+    private volatile SearchStats _stats = new SearchStats();
+
+    /**
+     * True iff I ponder (see setPondering).
+     */
+    private boolean _ponder;
+
+    /**
+     * The future of my pondering, or null if I am not pondering.
      */
-    private static int kingTwoMoveAtEdge(Board board) {
-        int counts = 0;
+    private CompletableFuture<Move> _pondering;
+
+    /**
+     * The reply my pondering expects.
+     */
+    private Move _expected;
+
+    /**
+     * The key of the position my pondering searches.
+     */
+    private long _ponderKey;
+
+    /**
+     * True iff the expected reply was made.
+     */
+    private boolean _ponderHit;
+
+    /**
+     * What my pondering did, once it has finished.
+     */
+    private volatile SearchStats _ponderStats;
+
+    /**
+     * Return a heuristic value for BOARD.  Uses only the counts Board
+     * keeps up to date as pieces move, and short scans of the lines
+     * near the king.  Unless the game is over, the magnitude of the
+     * value is at most MAX_HEURISTIC_VALUE.
+     */
+    static int staticScore(Board board) {
         Square king = board.kingPosition();
-        List<Move> firstMoves = board.legalMoves(king);
-        for (Move mv : firstMoves) {
-            board.put(EMPTY, mv.from());
-            board.put(KING, mv.to());
-            int row = mv.to().row();
-            int col = mv.to().col();
-            Square[] edges = new Square[]{
-                    sq(8, row), sq(col, 0),
-                    sq(0, row), sq(col, 8)};
-            for (Square sq : edges) {
-                if (sq != null && board.isEligible(mv(mv.to(), sq))) {
-                    counts++;
-                }
-            }
-            board.put(KING, king);
-            board.put(EMPTY, mv.to());
+        if (king == null) {
+            return -WINNING_VALUE;
+        } else if (king.isEdge()) {
+            return WINNING_VALUE;
         }
-        return counts;
+        int value = kingPosValue(board)
+                + board.pieceCount(WHITE) + board.pieceCount(KING) + 7
+                - board.pieceCount(BLACK);
+        return Math.max(-MAX_HEURISTIC_VALUE,
+                Math.min(MAX_HEURISTIC_VALUE, value));
     }
 
     /**
@@ -298,187 +755,102 @@ class AI extends Player {
      * @param board The current board.
      */
     private static int addKingPosValue(Board board) {
-        int value = 0;
-        Square king = board.kingPosition();
-
-        int row = king.row();
-        int col = king.col();
-        Square[] edges = new Square[]{
-                sq(8, row), sq(col, 0),
-                sq(0, row), sq(col, 8)};
+        int king = board.kingPosition().index();
         int edgeCounts = 0;
-        for (Square sq : edges) {
-            if (mv(king, sq) != null
-                    && board.isEligible(mv(king, sq))) {
+        for (int d = 0; d < 4; d += 1) {
+            if (board.kingBlockers(d) == 0
+                    && ROOK_INDICES[king][d].length > 0) {
                 edgeCounts++;
             }
         }
         if (edgeCounts >= 2) {
-            value = WILL_WIN_VALUE;
-        } else if (edgeCounts == 1 && board.turn() == WHITE) {
-            value = WILL_WIN_VALUE;
-        } else {
-            value = edgeCounts * 5;
-        }
-
-        if (value == 0) {
-            value = kingTwoMoveAtEdge(board) > 0 ? 3 : 0;
-            value = board.turn() == WHITE ? value * 2 : value;
+            return WILL_WIN_VALUE;
+        } else if (edgeCounts == 1) {
+            return board.turn() == WHITE ? WILL_WIN_VALUE : 5;
         }
-        return value;
+        int value = ESCAPE_VALUES[board.kingEscapeDistance()];
+        return board.turn() == WHITE ? 2 * value : value;
     }
 
     /**
-     * Return a negative value of current King Position Value.
+     * Return a negative value of current King Position Value: large if
+     * black, to move, can complete the capture of the king, and
+     * otherwise smaller the more black pieces surround it.
      *
      * @param board The current board.
      */
     private static int minusKingPosValue(Board board) {
-        int value = 0;
         Square king = board.kingPosition();
-
-        HashSet<Square> blackSq = board.pieceLocations(BLACK);
-        ArrayList<Square> absents = kingAdjHostile(board, king, true);
-        int blackCounts = 4 - absents.size();
-
-        if (blackCounts == 3) {
-            value = minusKPVHelper1(board, king, blackSq);
-        } else if (blackCounts == 2) {
-            value = minusKPVHelper2(board, king, blackSq);
-        } else if (blackCounts == 1) {
-            value = minusKPVHelper3(board, king, blackSq);
-        }
-        return value;
-    }
-
-    /**
-     * Return a negative value of current King Position Value.
-     * Helper sub function for blackCounts equals 3.
-     *
-     * @param board   The current board.
-     * @param king    The king position at current board.
-     * @param blackSq All black pieces' square at current board.
-     */
-    private static int minusKPVHelper1(Board board, Square king,
-                                       HashSet<Square> blackSq) {
-        int value = 0;
-        ArrayList<Square> absents = kingAdjHostile(board, king, true);
-        for (Square sq : blackSq) {
-            if (mv(sq, absents.get(0)) != null
-                    && board.isLegal(mv(sq, absents.get(0)))) {
-                value = -WILL_WIN_VALUE;
-                break;
-            }
-        }
-        value = value == 0 ? -10 : value;
-        return value;
-    }
-
-    /**
-     * Return a negative value of current King Position Value.
-     * Helper sub function for blackCounts equals 2.
-     *
-     * @param board   The current board.
-     * @param king    The king position at current board.
-     * @param blackSq All black pieces' square at current board.
-     */
-    private static int minusKPVHelper2(Board board, Square king,
-                                       HashSet<Square> blackSq) {
-        int value = 0;
-        ArrayList<Square> absents = kingAdjHostile(board, king, true);
-        ArrayList<Square> presents = kingAdjHostile(board, king, false);
-        if (king == THRONE) {
-            value = -5;
-        } else if (board.isKingInThrone()) {
-            Square valid = absents.get(0)
-                    == THRONE ? absents.get(1) : absents.get(0);
-            for (Square sq : blackSq) {
-                if (mv(sq, valid) != null
-                        && board.isLegal(mv(sq, valid))) {
-                    value = -WILL_WIN_VALUE;
-                    break;
+        int[][] rays = ROOK_INDICES[king.index()];
+        boolean blackToMove = board.turn() == BLACK;
+        switch (board.kingNeighbors()) {
+        case 3:
+            for (int d = 0; d < 4; d += 1) {
+                if (rays[d].length > 0 && board.get(rays[d][0]) != BLACK) {
+                    return blackToMove && blackCanReach(board, rays[d][0])
+                            ? -WILL_WIN_VALUE : -10;
                 }
             }
-            value = value == 0 ? -10 : value;
-        } else {
-            int dir1 = presents.get(0).direction(king);
-            int dir2 = presents.get(1).direction(king);
-            for (Square sq : blackSq) {
-                Move move1 = mv(sq, king.rookMove(dir1, 1));
-                Move move2 = mv(sq, king.rookMove(dir2, 1));
-                if (move1 != null
-                        && board.isLegal(move1)) {
-                    value = -WILL_WIN_VALUE;
-                    break;
-                }
-                if (move2 != null
-                        && board.isLegal(move2)) {
-                    value = -WILL_WIN_VALUE;
-                    break;
+            return -10;
+        case 2:
+            if (king == THRONE) {
+                return -5;
+            } else if (board.isKingInThrone()) {
+                for (int d = 0; d < 4; d += 1) {
+                    int n = rays[d][0];
+                    if (board.get(n) != BLACK && n != THRONE.index()) {
+                        return blackToMove && blackCanReach(board, n)
+                                ? -WILL_WIN_VALUE : -10;
+                    }
                 }
+                return -10;
             }
+            return blackToMove && blackCanFlank(board, rays)
+                    ? -WILL_WIN_VALUE : 0;
+        case 1:
+            return blackToMove && blackCanFlank(board, rays)
+                    ? -WILL_WIN_VALUE : -5;
+        default:
+            return 0;
         }
-        return value;
     }
 
     /**
-     * Return a negative value of current King Position Value.
-     * Helper sub function for blackCounts equals 1.
-     *
-     * @param board   The current board.
-     * @param king    The king position at current board.
-     * @param blackSq All black pieces' square at current board.
-     */
-    private static int minusKPVHelper3(Board board, Square king,
-                                       HashSet<Square> blackSq) {
-        int value = 0;
-        ArrayList<Square> presents = kingAdjHostile(board, king, false);
-        if (board.turn() == BLACK) {
-            int direction = presents.get(0).direction(king);
-            for (Square sq : blackSq) {
-                Move move = mv(sq, king.rookMove(direction, 1));
-                if (move != null
-                        && board.isLegal(move)) {
-                    value = -WILL_WIN_VALUE;
-                    break;
-                }
+     * Return true iff black can move a piece to the square opposite a
+     * black piece next to the king on BOARD, whose lines from the king
+     * are RAYS (as in Square.ROOK_INDICES).
+     */
+    private static boolean blackCanFlank(Board board, int[][] rays) {
+        for (int d = 0; d < 4; d += 1) {
+            int[] opposite = rays[(d + 2) & 3];
+            if (rays[d].length > 0 && board.get(rays[d][0]) == BLACK
+                    && opposite.length > 0
+                    && blackCanReach(board, opposite[0])) {
+                return true;
             }
         }
-        if (value > -WILL_WIN_VALUE) {
-            value -= 5;
-        }
-        return value;
+        return false;
     }
 
-
     /**
-     * Return a lists consists of the EMPTY adjacent squares of KING.
-     *
-     * @param board  The current board.
-     * @param king   The king position at current board.
-     * @param absent Whether return absents or presents.
-     */
-    static ArrayList<Square> kingAdjHostile(Board board, Square king,
-                                            boolean absent) {
-        ArrayList<Square> dirs = new ArrayList<>();
-        Square[] adjs = new Square[]{
-                king.rookMove(0, 1),
-                king.rookMove(1, 1),
-                king.rookMove(2, 1),
-                king.rookMove(3, 1)
-        };
-        for (Square sq : adjs) {
-            if (absent) {
-                if (sq != null && board.get(sq) != BLACK) {
-                    dirs.add(sq);
-                }
-            } else {
-                if (sq != null && board.get(sq) == BLACK) {
-                    dirs.add(sq);
+     * Return true iff the square with index TARGET on BOARD is empty,
+     * is not the throne, and some black piece could move to it.
+     */
+    private static boolean blackCanReach(Board board, int target) {
+        if (board.get(target) != EMPTY || target == THRONE.index()) {
+            return false;
+        }
+        for (int d = 0; d < 4; d += 1) {
+            for (int s : ROOK_INDICES[target][d]) {
+                if (board.get(s) != EMPTY) {
+                    if (board.get(s) == BLACK) {
+                        return true;
+                    }
+                    break;
                 }
             }
         }
-        return dirs;
+        return false;
     }
 
 }
@@ -1,10 +1,18 @@
 package tablut;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.Test;
 
 import static org.junit.Assert.*;
 import static tablut.TablutTests.*;
 import static tablut.Move.*;
+import static tablut.Square.sq;
 
 public class AITest {
 
@@ -17,17 +25,16 @@ public class AITest {
 
     @Test
     public void testBlackOneMoveWin() {
+        for (Piece[][] position : new Piece[][][] {
+                BLACK_ONE_MOVE_WIN1, BLACK_ONE_MOVE_WIN2,
+                BLACK_ONE_MOVE_WIN3, BLACK_ONE_MOVE_WIN4 }) {
+            Board board = new Board();
+            buildBoard(board, position);
+            assertEquals(AI.WINNING_VALUE - 1, quiesce(board));
+        }
         Board board = new Board();
-        buildBoard(board, BLACK_ONE_MOVE_WIN1);
-        assertTrue(AI.blackOneMoveWin(board));
-        buildBoard(board, BLACK_ONE_MOVE_WIN2);
-        assertTrue(AI.blackOneMoveWin(board));
-        buildBoard(board, BLACK_ONE_MOVE_WIN3);
-        assertTrue(AI.blackOneMoveWin(board));
-        buildBoard(board, BLACK_ONE_MOVE_WIN4);
-        assertTrue(AI.blackOneMoveWin(board));
         buildBoard(board, BLACK_ONE_MOVE_WIN5);
-        assertFalse(AI.blackOneMoveWin(board));
+        assertNotEquals(AI.WINNING_VALUE - 1, quiesce(board));
     }
 
     @Test
@@ -35,19 +42,445 @@ public class AITest {
         Board board = new Board();
         buildBoard(board, WHITE_ONE_MOVE_WIN1);
         board.makeMove(mv("i5-h"));
-        assertTrue(AI.whiteOneMoveWin(board));
+        assertEquals(AI.WINNING_VALUE - 1, quiesce(board));
         board = new Board();
         buildBoard(board, WHITE_ONE_MOVE_WIN2);
         board.makeMove(mv("i5-h"));
-        assertFalse(AI.whiteOneMoveWin(board));
+        assertNotEquals(AI.WINNING_VALUE - 1, quiesce(board));
+    }
+
+    /**
+     * Return the value of BOARD, for the side to move, found by the
+     * quiescence search alone.
+     */
+    private static int quiesce(Board board) {
+        Searcher searcher = new Searcher(new TranspositionTable(1),
+                new AtomicBoolean());
+        return searcher.searchNode(board, 0, 0,
+                board.turn() == Piece.WHITE ? 1 : -1, -AI.INFTY, AI.INFTY,
+                () -> false);
     }
 
     @Test
-    public void testKingHostile() {
+    public void testTranspositionTable() {
+        TranspositionTable table = new TranspositionTable(1);
         Board board = new Board();
+        long key = board.key();
+        assertEquals(TranspositionTable.MISS, table.probe(key));
+        table.store(key, 3, TranspositionTable.LOWER, -12345,
+                mv("f1-3").packed());
+        long entry = table.probe(key);
+        assertEquals(3, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER,
+                TranspositionTable.bound(entry));
+        assertEquals(-12345, TranspositionTable.score(entry));
+        assertEquals(mv("f1-3"), mv(TranspositionTable.move(entry)));
+        table.store(key, 1, TranspositionTable.EXACT, 7, 0);
+        assertEquals(1, TranspositionTable.depth(table.probe(key)));
+        table.clear();
+        assertEquals(TranspositionTable.MISS, table.probe(key));
+    }
+
+    @Test
+    public void testMoveOrder() {
+        Board board = new Board();
+        for (Square s : Square.SQUARE_LIST) {
+            board.put(Piece.EMPTY, s);
+        }
+        board.put(Piece.KING, sq("e", "5"));
+        board.put(Piece.WHITE, sq("c", "3"));
+        board.put(Piece.BLACK, sq("b", "3"));
+        board.put(Piece.BLACK, sq("d", "9"));
+        int[] moves = new int[Board.MAX_MOVES];
+        int end = board.legalMoves(Piece.BLACK, moves, 0);
+        int hashMove = moves[end - 1];
+        MoveOrderer orderer = new MoveOrderer(4);
+        orderer.order(board, moves, 0, end, hashMove, 0);
+        assertEquals(hashMove, moves[0]);
+        assertEquals(mv("d9-3").packed(), moves[1]);
+        orderer.cutoff(board, mv("b3-1").packed(), 0, 2);
+        orderer.order(board, moves, 0, end, 0, 0);
+        assertEquals(mv("d9-3").packed(), moves[0]);
+        assertEquals(mv("b3-1").packed(), moves[1]);
+    }
+
+    @Test
+    public void testQuiescenceWins() {
+        Searcher searcher = new Searcher(new TranspositionTable(1),
+                new AtomicBoolean());
+        Board board = new Board();
+        buildBoard(board, WHITE_ONE_MOVE_WIN1);
+        board.makeMove(mv("i5-h"));
+        assertEquals(AI.WINNING_VALUE - 1, searcher.searchNode(board, 0, 0,
+                1, -AI.INFTY, AI.INFTY, () -> false));
         buildBoard(board, BLACK_ONE_MOVE_WIN1);
-        assertEquals(1,
-                AI.kingAdjHostile(
-                        board, board.kingPosition(), true).size());
+        board.makeMove(mv("e3-a"));
+        assertEquals(AI.WINNING_VALUE - 1, searcher.searchNode(board, 0, 0,
+                -1, -AI.INFTY, AI.INFTY, () -> false));
+    }
+
+    @Test
+    public void testParallelWins() {
+        AI serial = new AI(1, 1, AI.Engine.SMP);
+        AI parallel = new AI(16, 4, AI.Engine.SMP);
+        for (Board board : oneMoveWins()) {
+            Piece mover = board.turn();
+            for (AI ai : new AI[] { serial, parallel }) {
+                Board copy = new Board(board);
+                Move move = ai.findMove(copy, 0);
+                assertTrue(copy.isLegal(move));
+                copy.makeMove(move);
+                assertEquals(mover, copy.winner());
+            }
+        }
+        int helpers = liveThreads("tablut-search");
+        assertTrue(helpers >= 3);
+        parallel.close();
+        assertTrue(awaitThreads("tablut-search", helpers - 3));
+    }
+
+    /**
+     * Return the number of live threads named NAME.
+     */
+    private static int liveThreads(String name) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().equals(name)) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return true iff at most COUNT live threads are named NAME within
+     * five seconds.
+     */
+    private static boolean awaitThreads(String name, int count) {
+        for (int i = 0; i < 100; i += 1) {
+            if (liveThreads(name) <= count) {
+                return true;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException excp) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testYoungBrothersAgrees() {
+        AI serial = new AI(1, 1, AI.Engine.SMP);
+        AI ybwc = new AI(1, 4, AI.Engine.YBWC);
+        for (Board board : oneMoveWins()) {
+            Piece mover = board.turn();
+            Move move = ybwc.findMove(board, 0);
+            assertTrue(Searcher.isWin(ybwc.stats().score()));
+            board.makeMove(move);
+            assertEquals(mover, board.winner());
+        }
+        Board board = new Board();
+        for (String next : new String[] { null, "d1-3", "e3-g" }) {
+            if (next != null) {
+                board.makeMove(mv(next));
+            }
+            serial.clearTable();
+            ybwc.clearTable();
+            serial.findMove(board, 0);
+            Move move = ybwc.findMove(board, 0);
+            assertTrue(board.isLegal(move));
+            assertEquals(AI.DEFAULT_SEARCH_DEPTH, ybwc.stats().depth());
+            assertEquals(serial.stats().score(), ybwc.stats().score());
+        }
+        ybwc.close();
+    }
+
+    /**
+     * Return positions from TablutTests in which the side to move wins
+     * in one move.
+     */
+    private static Board[] oneMoveWins() {
+        Board white = new Board();
+        buildBoard(white, WHITE_ONE_MOVE_WIN1);
+        white.makeMove(mv("i5-h"));
+        Board black = new Board();
+        buildBoard(black, BLACK_ONE_MOVE_WIN1);
+        black.setTurn(Piece.WHITE);
+        black.makeMove(mv("e3-a"));
+        return new Board[] { white, black };
+    }
+
+    @Test
+    public void testOpenLinesNotProvenWin() {
+        Board board = new Board();
+        for (int col = 0; col < Board.SIZE; col += 1) {
+            for (int row = 0; row < Board.SIZE; row += 1) {
+                board.put(Piece.EMPTY, sq(col, row));
+            }
+        }
+        board.put(Piece.KING, sq("c3"));
+        board.put(Piece.WHITE, sq("e5"));
+        board.put(Piece.WHITE, sq("f5"));
+        board.put(Piece.BLACK, sq("h8"));
+        board.put(Piece.BLACK, sq("g9"));
+        for (Piece side : new Piece[]{Piece.WHITE, Piece.BLACK}) {
+            board.setTurn(side);
+            int score = AI.staticScore(board);
+            assertTrue(score >= AI.WILL_WIN_VALUE);
+            assertTrue(score <= AI.MAX_HEURISTIC_VALUE);
+            assertFalse(Searcher.isWin(score));
+            assertFalse(Searcher.isWin(-score));
+        }
+        assertTrue(Searcher.isWin(AI.WINNING_VALUE - AI.MAX_PLY));
+        assertTrue(Searcher.isWin(-AI.WINNING_VALUE + AI.MAX_PLY));
+    }
+
+    @Test
+    public void testMonteCarloWin() {
+        Board board = new Board();
+        buildBoard(board, WHITE_ONE_MOVE_WIN1);
+        board.makeMove(mv("i5-h"));
+        Move move = new MonteCarloAI().findMove(board, 0);
+        board.makeMove(move);
+        assertEquals(Piece.WHITE, board.winner());
+    }
+
+    @Test
+    public void testMonteCarloTreeReuse() {
+        MonteCarloAI ai = new MonteCarloAI();
+        Board board = new Board();
+        board.makeMove(ai.findMove(board, 0));
+        assertEquals(MonteCarloAI.DEFAULT_PLAYOUTS, ai.rootVisits());
+        board.makeMove(board.legalMoves(board.turn()).get(0));
+        ai.findMove(board, 0);
+        assertTrue(ai.rootVisits() > MonteCarloAI.DEFAULT_PLAYOUTS);
     }
+
+    @Test
+    public void testMonteCarloClose() {
+        MonteCarloAI ai = new MonteCarloAI(3);
+        Board board = new Board();
+        assertTrue(board.isLegal(ai.findMove(board, 0)));
+        int helpers = liveThreads("tablut-mcts");
+        assertTrue(helpers >= 2);
+        ai.close();
+        assertEquals(0, ai.rootVisits());
+        assertTrue(awaitThreads("tablut-mcts", helpers - 2));
+        assertTrue(board.isLegal(ai.findMove(board, 0)));
+        ai.close();
+    }
+
+    @Test
+    public void testTablebaseIndexing() {
+        int[] whites = {3, 40, 77}, blacks = {0, 12, 41, 80};
+        int[] kings = {10, 39, 42, 70};
+        for (int king : kings) {
+            long rank = Tablebase.pieceRank(king, whites, blacks);
+            assertTrue(rank < Tablebase.pieceSets(3, 4));
+            int[] w = new int[3], b = new int[4];
+            Tablebase.unrankPieces(rank, king, w, b);
+            assertArrayEquals(whites, w);
+            assertArrayEquals(blacks, b);
+        }
+    }
+
+    @Test
+    public void testTablebase() throws IOException {
+        File file = File.createTempFile("tablut", ".tb");
+        file.deleteOnExit();
+        TablebaseGenerator generator = new TablebaseGenerator(0, 1);
+        generator.solve(null);
+        generator.write(file.getPath());
+        Tablebase tablebase = Tablebase.load(file.getPath());
+        assertEquals(Tablebase.UNKNOWN, tablebase.probe(new Board()));
+
+        Board board = new Board();
+        for (Square s : Square.SQUARE_LIST) {
+            board.put(Piece.EMPTY, s);
+        }
+        board.put(Piece.KING, sq(3, 2));
+        board.put(Piece.BLACK, sq(3, 7));
+        board.setTurn(Piece.BLACK);
+        assertEquals(Tablebase.loss(2), tablebase.probe(board));
+        board.setTurn(Piece.WHITE);
+        assertEquals(Tablebase.win(1), tablebase.probe(board));
+
+        Board image = new Board(board);
+        image.put(Piece.EMPTY, sq(3, 2));
+        image.put(Piece.EMPTY, sq(3, 7));
+        image.put(Piece.KING, sq(2, 5));
+        image.put(Piece.BLACK, sq(7, 5));
+        assertEquals(Tablebase.win(1), tablebase.probe(image));
+
+        AI ai = new AI();
+        ai.setTablebase(tablebase);
+        Move move = ai.findMove(board, 0);
+        assertTrue(move.to().isEdge());
+        assertEquals(0, ai.nodes());
+    }
+
+    @Test
+    public void testOpeningBook() throws IOException {
+        OpeningBookBuilder builder = new OpeningBookBuilder();
+        Board board = new Board();
+        builder.add(board, mv("d1-2"), true);
+        builder.add(board, mv("e2-c"), false);
+        Board played = new Board();
+        played.makeMove(mv("d1-2"));
+        builder.add(played, mv("c5-3"), true);
+        assertEquals(2, builder.positions());
+        assertEquals(3, builder.entries());
+
+        File file = File.createTempFile("tablut", ".book");
+        file.deleteOnExit();
+        builder.write(file.getPath());
+        OpeningBook book = OpeningBook.load(file.getPath());
+        assertEquals(3, book.size());
+
+        int openings = 0;
+        for (int roll = 0; roll < 3; roll += 1) {
+            int r = roll;
+            Move move = book.chooseMove(board, n -> r);
+            assertTrue(move == mv("d1-2") || move == mv("e2-c"));
+            openings += move == mv("d1-2") ? 1 : 0;
+        }
+        assertEquals(2, openings);
+
+        Board mirrored = new Board();
+        mirrored.makeMove(mv("f1-2"));
+        assertEquals(mv("g5-3"), book.chooseMove(mirrored, n -> 0));
+        AI ai = new AI();
+        ai.setOpeningBook(book);
+        assertEquals(mv("g5-3"), ai.findMove(mirrored, 0));
+        assertEquals(0, ai.nodes());
+        mirrored.makeMove(mv("g5-3"));
+        assertNull(book.chooseMove(mirrored, n -> 0));
+    }
+
+    @Test
+    public void testSearchStats() {
+        for (AI.Engine engine : AI.Engine.values()) {
+            AI ai = new AI(1, 2, engine);
+            assertNull(ai.stats());
+            Board board = new Board();
+            Move move = ai.findMove(board, 0);
+            SearchStats stats = ai.stats();
+            assertEquals(move, stats.move());
+            assertEquals(SearchStats.Source.SEARCH, stats.source());
+            assertEquals(AI.DEFAULT_SEARCH_DEPTH, stats.depth());
+            assertEquals(ai.nodes(), stats.nodes());
+            assertTrue(stats.evals() > 0 && stats.evals() < stats.nodes());
+            assertTrue(stats.firstCutoffs() > 0);
+            assertTrue(stats.firstCutoffs() <= stats.cutoffs());
+            assertTrue(stats.hits() > 0 && stats.hits() <= stats.probes());
+            assertTrue(stats.nanos() > 0);
+
+            assertEquals(move, stats.pv().get(0));
+            assertTrue(stats.pv().size() <= stats.depth());
+            Board line = new Board(board);
+            for (Move m : stats.pv()) {
+                assertTrue(line.isLegal(m));
+                line.makeMove(m);
+            }
+            String json = stats.toJson(Piece.BLACK, 1);
+            assertTrue(json.startsWith("{\"side\":\"black\",\"ply\":1,"
+                    + "\"move\":\"" + move + "\",\"source\":\"search\","));
+            assertTrue(json.contains("\"score\":" + stats.score() + ","));
+            assertTrue(json.contains("\"nodes\":" + stats.nodes() + ","));
+            assertTrue(json.contains("\"pv\":[\"" + move + "\""));
+        }
+    }
+
+    @Test
+    public void testTimedSearch() {
+        for (AI.Engine engine : AI.Engine.values()) {
+            int timers = liveThreads("tablut-timer");
+            AI ai = new AI(1, 2, engine);
+            Board board = new Board();
+            long start = System.nanoTime();
+            Move move = ai.findMove(board, 200);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(millis < 200 + 500);
+            assertTrue(board.isLegal(move));
+            assertTrue(ai.stats().depth() >= 1);
+            ai.close();
+            assertTrue(awaitThreads("tablut-timer", timers));
+        }
+    }
+
+    @Test
+    public void testTimeCommand() {
+        Controller controller =
+                new Controller(new NullView(), null, new TextReporter(),
+                        new TextPlayer(), new AI(), false,
+                        new ByteArrayInputStream(
+                                "manual white\ntime 250\nquit\n".getBytes()),
+                        System.out);
+        assertEquals(0, controller.timeLimit());
+        controller.setPrompt(false);
+        controller.play();
+        assertEquals(250, controller.timeLimit());
+    }
+
+    @Test
+    public void testCancelMove() throws Exception {
+        for (AI.Engine engine : AI.Engine.values()) {
+            AI ai = new AI(1, 2, engine);
+            Board board = new Board();
+            CompletableFuture<Move> thinking =
+                    ai.findMoveAsync(board, 60000);
+            Thread.sleep(100);
+            long start = System.nanoTime();
+            assertTrue(ai.cancelMove());
+            assertTrue(thinking.isCancelled());
+            Move move = ai.findMoveAsync(board, 0).get(10, TimeUnit.SECONDS);
+            assertTrue(System.nanoTime() - start < 10_000_000_000L);
+            assertTrue(board.isLegal(move));
+            assertEquals(move, ai.stats().move());
+            assertFalse(ai.cancelMove());
+        }
+    }
+
+    @Test
+    public void testPondering() throws Exception {
+        Controller controller =
+                new Controller(new NullView(), null, new TextReporter(),
+                        new TextPlayer(), new AI(), false);
+        Board board = controller.board();
+        AI ai = new AI(Piece.WHITE, controller);
+        ai.setPondering(true);
+        board.makeMove(mv("d1-3"));
+        ai.moveMade(mv("d1-3"));
+        assertFalse(ai.pondering());
+
+        Move move = mv(ai.myMoveAsync().get(10, TimeUnit.SECONDS));
+        board.makeMove(move);
+        ai.moveMade(move);
+        assertTrue(ai.pondering());
+        Move expected = ai.stats().pv().get(1);
+        board.makeMove(expected);
+        ai.moveMade(expected);
+        assertTrue(ai.pondering());
+        move = mv(ai.myMoveAsync().get(10, TimeUnit.SECONDS));
+        assertFalse(ai.pondering());
+        assertTrue(board.isLegal(move));
+        assertEquals(move, ai.stats().move());
+
+        board.makeMove(move);
+        ai.moveMade(move);
+        assertTrue(ai.pondering());
+        for (Move reply : board.legalMoves(board.turn())) {
+            if (!reply.equals(ai.stats().pv().get(1))) {
+                board.makeMove(reply);
+                ai.moveMade(reply);
+                break;
+            }
+        }
+        assertFalse(ai.pondering());
+        move = mv(ai.myMoveAsync().get(10, TimeUnit.SECONDS));
+        assertTrue(board.isLegal(move));
+    }
+
 }
@@ -1,10 +1,10 @@
 package tablut;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Formatter;
+import java.util.Random;
 
 import static tablut.Move.*;
 import static tablut.Piece.*;
@@ -24,6 +24,115 @@ class Board {
      */
     static final int SIZE = 9;
 
+    /**
+     * The valid bits of the high word of an 81-bit square set.
+     */
+    private static final long HIGH_MASK = (1L << (NUM_SQUARES - 64)) - 1;
+
+    /**
+     * An upper bound on the number of legal moves in any position: each
+     * square can be reached by at most one piece from each direction.
+     * Move buffers passed to legalMoves need this much room.
+     */
+    static final int MAX_MOVES = 4 * NUM_SQUARES;
+
+    /**
+     * Bits used to record one captured piece on the undo stack: the
+     * Piece ordinal above the square index.  A move captures at most
+     * three pieces.
+     */
+    private static final int CAPTURE_BITS = 9;
+
+    /**
+     * Initial size of the undo stack.
+     */
+    private static final int INITIAL_UNDO_CAPACITY = 64;
+
+    /**
+     * All Pieces, by ordinal.
+     */
+    private static final Piece[] PIECES = Piece.values();
+
+    /**
+     * ZOBRIST[P.ordinal()][I] is the key contribution of Piece P on the
+     * square with index I.  The EMPTY entries are 0.
+     */
+    private static final long[][] ZOBRIST =
+            new long[Piece.values().length][NUM_SQUARES];
+
+    /**
+     * IMAGE_ZOBRIST[S][P.ordinal()][I] is the key contribution, to the
+     * image of a position under symmetry S (see Square.SYMMETRIES), of
+     * Piece P on the square with index I of the position.
+     */
+    private static final long[][][] IMAGE_ZOBRIST =
+            new long[NUM_SYMMETRIES][Piece.values().length][NUM_SQUARES];
+
+    /**
+     * The key contribution of white being on move.
+     */
+    private static final long WHITE_TO_MOVE;
+
+    static {
+        Random random = new Random(0x7AB1A7L);
+        for (Piece p : Piece.values()) {
+            if (p != EMPTY) {
+                for (int i = 0; i < NUM_SQUARES; i += 1) {
+                    ZOBRIST[p.ordinal()][i] = random.nextLong();
+                }
+            }
+        }
+        WHITE_TO_MOVE = random.nextLong();
+        for (int sym = 0; sym < NUM_SYMMETRIES; sym += 1) {
+            for (Piece p : Piece.values()) {
+                for (int i = 0; i < NUM_SQUARES; i += 1) {
+                    IMAGE_ZOBRIST[sym][p.ordinal()][i] =
+                            ZOBRIST[p.ordinal()][SYMMETRIES[sym][i]];
+                }
+            }
+        }
+    }
+
+    /**
+     * LINE_BITS[I][2 * D + W] is word W of the set of squares from the
+     * square with index I (exclusive) to the edge in direction D.
+     */
+    private static final long[][] LINE_BITS = new long[NUM_SQUARES][8];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int d = 0; d < 4; d += 1) {
+                for (int s : ROOK_INDICES[i][d]) {
+                    LINE_BITS[i][2 * d + (s >>> 6)] |= 1L << s;
+                }
+            }
+        }
+    }
+
+    /**
+     * The value of kingEscapeDistance() when the king needs at least
+     * this many moves to reach an edge, or cannot reach one.
+     */
+    static final int ESCAPE_LIMIT = 4;
+
+    /**
+     * Log base 2 of the number of entries in ESCAPE_MEMO.
+     */
+    private static final int ESCAPE_MEMO_BITS = 16;
+
+    /**
+     * Results of kingEscapeDistance, shared by all Boards and threads.
+     * An entry holds the hash of a king square and the blockers (all
+     * other occupied squares) with its low three bits replaced by the
+     * distance, or 0 if unused.  The array is read and written without
+     * synchronization, and Java does not promise that a long is written
+     * in one piece, so a thread may see halves of two different entries.
+     * Such a mixture is harmless: it is used only if its hash bits match
+     * those of the position sought, which is no likelier than the hash
+     * collisions the memo already accepts.
+     */
+    private static final long[] ESCAPE_MEMO = new long[1 << ESCAPE_MEMO_BITS];
+
     /**
      * The throne (or castle) square and its four surrounding squares.
      */
@@ -33,6 +142,11 @@ class Board {
             WTHRONE = sq(3, 4),
             ETHRONE = sq(5, 4);
 
+    /**
+     * The index of THRONE.
+     */
+    private static final int THRONE_INDEX = THRONE.index();
+
     /**
      * Initial positions of attackers.
      */
@@ -80,8 +194,14 @@ class Board {
      * Clears the board to the initial position.
      */
     void init() {
-        _state = new HashMap<>();
-        _stateList = new ArrayList<>();
+        Arrays.fill(_bits, 0L);
+        Arrays.fill(_pieceCounts, 0);
+        _pieceCounts[EMPTY.ordinal()] = NUM_SQUARES;
+        _king = null;
+        _key = 0;
+        Arrays.fill(_imageKeys, 0L);
+        _undoSize = 0;
+        _positions = new LongSet();
 
         _turn = BLACK;
         _winner = null;
@@ -96,13 +216,8 @@ class Board {
         for (Square sq : INITIAL_ATTACKERS) {
             put(BLACK, sq);
         }
-        for (Square sq : SQUARE_LIST) {
-            if (!_state.containsKey(sq)) {
-                put(EMPTY, sq);
-            }
-        }
 
-        _stateList.add(encodedBoard());
+        _positions.add(_key);
     }
 
     /**
@@ -111,8 +226,7 @@ class Board {
      * @param model Another board that should be copied.
      */
     void init(Board model) {
-        _state = new HashMap<>();
-        _stateList = new ArrayList<>();
+        _positions = new LongSet(model._positions);
 
         _turn = model.turn();
         _winner = model.winner();
@@ -120,8 +234,19 @@ class Board {
         _repeated = model.repeatedPosition();
         _limitCount = model.moveLimit();
 
-        _state.putAll(model._state);
-        _stateList.addAll(model._stateList);
+        System.arraycopy(model._bits, 0, _bits, 0, _bits.length);
+        System.arraycopy(model._pieceCounts, 0, _pieceCounts, 0,
+                _pieceCounts.length);
+        System.arraycopy(model._kingBlockers, 0, _kingBlockers, 0,
+                _kingBlockers.length);
+        _kingNeighbors = model._kingNeighbors;
+        _king = model._king;
+        _key = model._key;
+        System.arraycopy(model._imageKeys, 0, _imageKeys, 0,
+                _imageKeys.length);
+        _undoSize = model._undoSize;
+        _undoMoves = model._undoMoves.clone();
+        _undoCaptures = model._undoCaptures.clone();
     }
 
     /**
@@ -151,6 +276,16 @@ class Board {
         return _turn;
     }
 
+    /**
+     * Make it SIDE's turn to move, leaving the pieces where they are.
+     */
+    void setTurn(Piece side) {
+        if (side != _turn) {
+            _turn = side;
+            flipTurnKeys();
+        }
+    }
+
     /**
      * Return the winner in the current position, or null if there is no winner
      * yet.
@@ -186,12 +321,12 @@ class Board {
     private void checkRepeated() {
         if (winner() != null) {
             _moveCount++;
-            _stateList.add(encodedBoard());
+            _positions.add(_key);
             return;
         }
-        if (!_stateList.contains(encodedBoard())) {
+        if (!_positions.contains(_key)) {
             _moveCount++;
-            _stateList.add(encodedBoard());
+            _positions.add(_key);
         } else {
             _repeated = true;
             _winner = turn();
@@ -233,24 +368,185 @@ class Board {
     }
 
     /**
-     * Return location of the king.
+     * Return the Zobrist key of the current position: the XOR of a random
+     * value for each (piece, square) pair on the board and of
+     * WHITE_TO_MOVE when it is white's turn.  It is updated incrementally
+     * as pieces are placed and removed, so equal positions (with equal
+     * sides to move) always have equal keys.
+     */
+    long key() {
+        return _key;
+    }
+
+    /**
+     * Return the key() of the image of the current position under
+     * SYMMETRY (see Square.SYMMETRIES), with the same side to move.
+     * key(0) is key().
+     */
+    long key(int symmetry) {
+        return symmetry == 0 ? _key : _imageKeys[symmetry];
+    }
+
+    /**
+     * Return the first symmetry whose image of the current position has
+     * the least key.  All images of a position have the same canonical
+     * symmetry image, and so the same canonicalKey().
+     */
+    int canonicalSymmetry() {
+        int best = 0;
+        long bestKey = _key;
+        for (int sym = 1; sym < NUM_SYMMETRIES; sym += 1) {
+            if (_imageKeys[sym] < bestKey) {
+                best = sym;
+                bestKey = _imageKeys[sym];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return the least key() of the images of the current position under
+     * the symmetries of the board, which is the same for all of them.
+     * Since the rules are symmetric, caches of values keyed by it share
+     * entries among symmetric positions.
+     */
+    long canonicalKey() {
+        return key(canonicalSymmetry());
+    }
+
+    /**
+     * Record a change of the side to move in the keys.
+     */
+    private void flipTurnKeys() {
+        _key ^= WHITE_TO_MOVE;
+        for (int sym = 1; sym < NUM_SYMMETRIES; sym += 1) {
+            _imageKeys[sym] ^= WHITE_TO_MOVE;
+        }
+    }
+
+    /**
+     * Return location of the king, or null if it has been captured.
      */
     Square kingPosition() {
-        int counts = 0;
-        Square square = null;
-        for (Square sq : pieceLocations(WHITE)) {
-            if (get(sq) == KING) {
-                counts++;
-                if (counts > 1) {
-                    throw new RuntimeException(
-                            String.format("More than ONE KING found.\n"
-                                    + "Current State:\n%s", this)
-                    );
+        assert Long.bitCount(_bits[word(KING, 0)])
+                + Long.bitCount(_bits[word(KING, 1)]) <= 1
+                : String.format("More than ONE KING found.\n"
+                        + "Current State:\n%s", this);
+        return _king;
+    }
+
+    /**
+     * Return the number of squares containing P.
+     */
+    int pieceCount(Piece p) {
+        return _pieceCounts[p.ordinal()];
+    }
+
+    /**
+     * Return the number of black pieces orthogonally adjacent to the
+     * king, or 0 if there is no king.
+     */
+    int kingNeighbors() {
+        return _kingNeighbors;
+    }
+
+    /**
+     * Return the number of pieces between the king and the edge of the
+     * board in direction DIR (as for Square.rookMove), or 0 if there is
+     * no king.
+     */
+    int kingBlockers(int dir) {
+        return _kingBlockers[dir];
+    }
+
+    /**
+     * Return true iff there is at least one square between the square
+     * with index INDEX and the edge in direction DIR, and all of them
+     * are empty.  INDEX itself may be occupied.
+     */
+    boolean isOpenLine(int index, int dir) {
+        long[] line = LINE_BITS[index];
+        return (line[2 * dir] | line[2 * dir + 1]) != 0
+                && (occupied(0) & line[2 * dir]) == 0
+                && (occupied(1) & line[2 * dir + 1]) == 0;
+    }
+
+    /**
+     * Return the least number of moves the king needs to reach an edge
+     * square if the other pieces stay where they are: 0 if it is on an
+     * edge, and ESCAPE_LIMIT if it needs at least that many or there
+     * is no king.  Found by a breadth-first search over the king's
+     * slides, memoized on the king's square and the blockers.
+     */
+    int kingEscapeDistance() {
+        if (_king == null) {
+            return ESCAPE_LIMIT;
+        } else if (_king.isEdge()) {
+            return 0;
+        }
+        int king = _king.index();
+        long bit = 1L << king;
+        long lo = occupied(0) & ~(king < 64 ? bit : 0),
+                hi = occupied(1) & ~(king < 64 ? 0 : bit);
+        long hash = (lo * 0x9E3779B97F4A7C15L + hi) * 0xC2B2AE3D27D4EB4FL
+                + king * 0x165667B19E3779F9L;
+        hash ^= hash >>> 29;
+        int slot = (int) (hash >>> (64 - ESCAPE_MEMO_BITS));
+        long entry = ESCAPE_MEMO[slot];
+        if (entry != 0 && (entry & ~7L) == (hash & ~7L)) {
+            return (int) (entry & 7);
+        }
+        int distance = escapeSearch(king, lo, hi);
+        ESCAPE_MEMO[slot] = (hash & ~7L) | distance;
+        return distance;
+    }
+
+    /**
+     * Return kingEscapeDistance() for a king on the square with index
+     * KING, not on an edge, where LO and HI are the words of the set of
+     * the other occupied squares.
+     */
+    private int escapeSearch(int king, long lo, long hi) {
+        int[] queue = _escapeQueue;
+        long seenLo = lo | (king < 64 ? 1L << king : 0),
+                seenHi = hi | (king < 64 ? 0 : 1L << king);
+        queue[0] = king;
+        int head = 0, tail = 1;
+        for (int distance = 1; distance < ESCAPE_LIMIT; distance += 1) {
+            int end = tail;
+            for (int i = head; i < end; i += 1) {
+                long[] line = LINE_BITS[queue[i]];
+                for (int d = 0; d < 4; d += 1) {
+                    if ((line[2 * d] | line[2 * d + 1]) != 0
+                            && (lo & line[2 * d]) == 0
+                            && (hi & line[2 * d + 1]) == 0) {
+                        return distance;
+                    }
+                }
+            }
+            for (int i = head; i < end; i += 1) {
+                for (int[] ray : ROOK_INDICES[queue[i]]) {
+                    for (int t : ray) {
+                        long bit = 1L << t;
+                        long seen = t < 64 ? seenLo : seenHi;
+                        if ((seen & bit) != 0) {
+                            if (((t < 64 ? lo : hi) & bit) != 0) {
+                                break;
+                            }
+                            continue;
+                        }
+                        if (t < 64) {
+                            seenLo |= bit;
+                        } else {
+                            seenHi |= bit;
+                        }
+                        queue[tail++] = t;
+                    }
                 }
-                square = sq;
             }
+            head = end;
         }
-        return square;
+        return ESCAPE_LIMIT;
     }
 
     /**
@@ -265,7 +561,23 @@ class Board {
      * 0 <= COL, ROW <= 9.
      */
     final Piece get(int col, int row) {
-        return _state.get(sq(col, row));
+        return get(sq(col, row).index());
+    }
+
+    /**
+     * Return the contents of the square whose index is INDEX.
+     */
+    final Piece get(int index) {
+        int w = index >>> 6;
+        long bit = 1L << index;
+        if ((_bits[word(BLACK, w)] & bit) != 0) {
+            return BLACK;
+        } else if ((_bits[word(WHITE, w)] & bit) != 0) {
+            return WHITE;
+        } else if ((_bits[word(KING, w)] & bit) != 0) {
+            return KING;
+        }
+        return EMPTY;
     }
 
     /**
@@ -279,14 +591,81 @@ class Board {
      * Set square S to P.
      */
     final void put(Piece p, Square s) {
-        _state.put(s, p);
+        int index = s.index(), w = index >>> 6;
+        long bit = 1L << index;
+        Piece old = get(index);
+        _key ^= ZOBRIST[old.ordinal()][index]
+                ^ ZOBRIST[p.ordinal()][index];
+        for (int sym = 1; sym < NUM_SYMMETRIES; sym += 1) {
+            long[][] zobrist = IMAGE_ZOBRIST[sym];
+            _imageKeys[sym] ^= zobrist[old.ordinal()][index]
+                    ^ zobrist[p.ordinal()][index];
+        }
+        _bits[word(WHITE, w)] &= ~bit;
+        _bits[word(BLACK, w)] &= ~bit;
+        _bits[word(KING, w)] &= ~bit;
+        if (p != EMPTY) {
+            _bits[word(p, w)] |= bit;
+        }
+        _pieceCounts[old.ordinal()] -= 1;
+        _pieceCounts[p.ordinal()] += 1;
+        if (p == KING) {
+            _king = s;
+            countKingLines();
+        } else if (_king == s) {
+            _king = findKing();
+            countKingLines();
+        } else if (_king != null && _king.isRookMove(s)) {
+            _kingBlockers[_king.direction(s)] +=
+                    (p == EMPTY ? 0 : 1) - (old == EMPTY ? 0 : 1);
+            if (_king.adjacent(s)) {
+                _kingNeighbors += (p == BLACK ? 1 : 0)
+                        - (old == BLACK ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Recompute _kingNeighbors and _kingBlockers from scratch, after the
+     * king has moved.
+     */
+    private void countKingLines() {
+        _kingNeighbors = 0;
+        Arrays.fill(_kingBlockers, 0);
+        if (_king == null) {
+            return;
+        }
+        long[] line = LINE_BITS[_king.index()];
+        for (int d = 0; d < 4; d += 1) {
+            _kingBlockers[d] = Long.bitCount(occupied(0) & line[2 * d])
+                    + Long.bitCount(occupied(1) & line[2 * d + 1]);
+            int[] ray = ROOK_INDICES[_king.index()][d];
+            if (ray.length > 0 && get(ray[0]) == BLACK) {
+                _kingNeighbors += 1;
+            }
+        }
+    }
+
+    /**
+     * Return the square of a KING on the board, or null if there is none.
+     * Only needed when the cached king square is overwritten, which can
+     * leave another KING behind if one was toggled onto the board.
+     */
+    private Square findKing() {
+        long lo = _bits[word(KING, 0)], hi = _bits[word(KING, 1)];
+        if (lo != 0) {
+            return sq(Long.numberOfTrailingZeros(lo));
+        } else if (hi != 0) {
+            return sq(64 + Long.numberOfTrailingZeros(hi));
+        }
+        return null;
     }
 
     /**
      * Set square S to P and record for undoing.
      */
     final void revPut(Piece p, Square s) {
-        _state.put(s, p);
+        put(p, s);
     }
 
     /**
@@ -308,7 +687,7 @@ class Board {
         int dir = from.direction(to);
         SqList path = ROOK_SQUARES[from.index()][dir];
         for (Square sq : path) {
-            if (get(sq) != EMPTY) {
+            if (isOccupied(sq.index())) {
                 return false;
             }
             if (sq == to) {
@@ -372,6 +751,12 @@ class Board {
         assert isLegal(from, to)
                 : String.format("Illegal Move.\nFrom: %s, to: %s",
                 from, to);
+        if (_undoSize == _undoMoves.length) {
+            _undoMoves = Arrays.copyOf(_undoMoves, 2 * _undoSize);
+            _undoCaptures = Arrays.copyOf(_undoCaptures, 2 * _undoSize);
+        }
+        _undoMoves[_undoSize] = (from.index() << 7) | to.index();
+        _undoCaptures[_undoSize] = 0;
         Piece chess = get(from);
         put(EMPTY, from);
         put(chess, to);
@@ -379,7 +764,9 @@ class Board {
         for (Square s : squares) {
             capture(to, s);
         }
+        _undoSize += 1;
         _turn = turn().opponent();
+        flipTurnKeys();
         checkRepeated();
         checkWhiteWins();
         checkMoveExceeds();
@@ -393,6 +780,14 @@ class Board {
         makeMove(move.from(), move.to());
     }
 
+    /**
+     * Move according to the packed move MOVE (see Move.packed()),
+     * assuming it is a legal move.
+     */
+    void makeMove(int move) {
+        makeMove(sq(move >>> 7), sq(move & 127));
+    }
+
     /**
      * Capture the piece between SQ0 and SQ2, assuming a piece just moved to
      * SQ0 and the necessary conditions are satisfied.
@@ -412,19 +807,19 @@ class Board {
                 if (get(center) == KING) {
                     _winner = BLACK;
                 }
-                put(EMPTY, center);
+                remove(center);
                 return;
             }
             if (get(center) == WHITE && get(sq2) == KING
                     && isThroneHostileToWhite()) {
-                put(EMPTY, center);
+                remove(center);
             }
         } else {
             if (kingPosition() == THRONE
                     && get(sq0) == get(sq2)
                     && get(sq0) == get(sq0.diag1(center))
                     && get(sq0) == get(sq0.diag2(center))) {
-                put(EMPTY, center);
+                remove(center);
                 _winner = BLACK;
             } else if (kingPosition() != THRONE
                     && (get(sq0) == get(sq2)
@@ -433,12 +828,25 @@ class Board {
                     || sq0.diag1(center) == THRONE)
                     && (get(sq0) == get(sq0.diag2(center))
                     || sq0.diag2(center) == THRONE)) {
-                put(EMPTY, center);
+                remove(center);
                 _winner = BLACK;
             }
         }
     }
 
+    /**
+     * Capture the piece on CENTER, recording it for undo.
+     */
+    private void remove(Square center) {
+        int shift = 0;
+        while ((_undoCaptures[_undoSize] >>> shift) != 0) {
+            shift += CAPTURE_BITS;
+        }
+        _undoCaptures[_undoSize] |=
+                ((get(center).ordinal() << 7) | center.index()) << shift;
+        put(EMPTY, center);
+    }
+
     /**
      * Whether KING is currently in one of the thrones.
      *
@@ -484,10 +892,19 @@ class Board {
     void undo() {
         if (moveCount() > 0) {
             undoPosition();
-            _state = decodedString(_stateList.get(_stateList.size() - 1));
-            if (winner() != null) {
-                _winner = null;
+            _undoSize -= 1;
+            int move = _undoMoves[_undoSize];
+            Square from = sq(move >>> 7), to = sq(move & 127);
+            put(get(to), from);
+            put(EMPTY, to);
+            for (int caps = _undoCaptures[_undoSize]; caps != 0;
+                 caps >>>= CAPTURE_BITS) {
+                int c = caps & ((1 << CAPTURE_BITS) - 1);
+                put(PIECES[c >>> 7], sq(c & 127));
             }
+            _turn = turn().opponent();
+            flipTurnKeys();
+            _winner = null;
         }
     }
 
@@ -504,7 +921,7 @@ class Board {
             return;
         }
         _repeated = false;
-        _stateList.remove(_stateList.size() - 1);
+        _positions.remove(_key);
         _moveCount--;
     }
 
@@ -513,8 +930,9 @@ class Board {
      * current position or win status.
      */
     void clearUndo() {
-        _stateList = new ArrayList<>();
-        _stateList.add(encodedBoard());
+        _undoSize = 0;
+        _positions.clear();
+        _positions.add(_key);
         _moveCount = 0;
     }
 
@@ -523,17 +941,59 @@ class Board {
      * SIDE (ignoring whose turn it is at the moment).
      */
     List<Move> legalMoves(Piece side) {
-        List<Move> lists = new MoveList();
-        for (Square sq : pieceLocations(side)) {
-            for (int i = 0; i < 4; i++) {
-                MoveList moves = ROOK_MOVES[sq.index()][i];
-                for (Move move : moves) {
-                    if (isEligible(move)) {
-                        lists.add(move);
-                    }
+        int[] moves = new int[MAX_MOVES];
+        return toMoveList(moves, legalMoves(side, moves, 0));
+    }
+
+    /**
+     * Write all legal moves on the current board for SIDE (ignoring whose
+     * turn it is at the moment) into MOVES, packed as by Move.packed(),
+     * starting at index START.  Return the index just past the last move
+     * written.  MOVES must have room for MAX_MOVES moves after START.
+     */
+    int legalMoves(Piece side, int[] moves, int start) {
+        int end = start;
+        for (int w = 0; w < 2; w++) {
+            long pieces = sideBits(side, w);
+            while (pieces != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                end = addMoves(index, moves, end);
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Write every unblocked rook move of the piece on the square whose
+     * index is INDEX into MOVES starting at END, and return the index just
+     * past the last one.  Each ray is walked once, up to its first
+     * occupied square.
+     */
+    private int addMoves(int index, int[] moves, int end) {
+        boolean king = _king != null && _king.index() == index;
+        int from = index << 7;
+        for (int d = 0; d < 4; d++) {
+            for (int to : ROOK_INDICES[index][d]) {
+                if (isOccupied(to)) {
+                    break;
+                }
+                if (to != THRONE_INDEX || king) {
+                    moves[end++] = from | to;
                 }
             }
         }
+        return end;
+    }
+
+    /**
+     * Return a new MoveList of the packed moves MOVES[0 .. END-1].
+     */
+    private static List<Move> toMoveList(int[] moves, int end) {
+        List<Move> lists = new MoveList();
+        for (int i = 0; i < end; i++) {
+            lists.add(mv(moves[i]));
+        }
         return lists;
     }
 
@@ -545,23 +1005,45 @@ class Board {
         if (get(square) == EMPTY) {
             return null;
         }
-        List<Move> lists = new MoveList();
-        for (int i = 0; i < 4; i++) {
-            MoveList moves = ROOK_MOVES[square.index()][i];
-            for (Move move : moves) {
-                if (isEligible(move)) {
-                    lists.add(move);
+        int[] moves = new int[2 * (SIZE - 1)];
+        return toMoveList(moves, addMoves(square.index(), moves, 0));
+    }
+
+    /**
+     * Return true iff SIDE has a legal move.
+     */
+    boolean hasMove(Piece side) {
+        for (int w = 0; w < 2; w++) {
+            long pieces = sideBits(side, w);
+            while (pieces != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                if (canMove(index)) {
+                    return true;
                 }
             }
         }
-        return lists;
+        return false;
     }
 
     /**
-     * Return true iff SIDE has a legal move.
+     * Return true iff the piece on the square whose index is INDEX has
+     * an unblocked rook move.  Stops at the first one found, so this
+     * usually looks only at the neighbours of INDEX.
      */
-    boolean hasMove(Piece side) {
-        return !legalMoves(side).isEmpty();
+    private boolean canMove(int index) {
+        boolean king = _king != null && _king.index() == index;
+        for (int d = 0; d < 4; d++) {
+            for (int to : ROOK_INDICES[index][d]) {
+                if (isOccupied(to)) {
+                    break;
+                }
+                if (to != THRONE_INDEX || king) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
 
@@ -603,14 +1085,55 @@ class Board {
     HashSet<Square> pieceLocations(Piece side) {
         assert side != null;
         HashSet<Square> squares = new HashSet<>();
-        for (Square sq : _state.keySet()) {
-            if (get(sq).side() == side.side()) {
-                squares.add(sq);
+        for (int w = 0; w < 2; w++) {
+            long pieces = sideBits(side, w);
+            while (pieces != 0) {
+                squares.add(sq((w << 6)
+                        + Long.numberOfTrailingZeros(pieces)));
+                pieces &= pieces - 1;
             }
         }
         return squares;
     }
 
+    /**
+     * Return the index into _bits of word W (0 for squares 0-63, 1 for
+     * squares 64-80) of the square set for P.
+     */
+    private static int word(Piece p, int w) {
+        return (p.ordinal() << 1) | w;
+    }
+
+    /**
+     * Return word W of the set of squares occupied by SIDE, counting
+     * the KING as WHITE.  The EMPTY side is the set of empty squares.
+     */
+    private long sideBits(Piece side, int w) {
+        switch (side.side()) {
+        case WHITE:
+            return _bits[word(WHITE, w)] | _bits[word(KING, w)];
+        case BLACK:
+            return _bits[word(BLACK, w)];
+        default:
+            return ~occupied(w) & (w == 0 ? -1L : HIGH_MASK);
+        }
+    }
+
+    /**
+     * Return word W of the set of occupied squares.
+     */
+    private long occupied(int w) {
+        return _bits[word(WHITE, w)] | _bits[word(BLACK, w)]
+                | _bits[word(KING, w)];
+    }
+
+    /**
+     * Return true iff the square whose index is INDEX is occupied.
+     */
+    private boolean isOccupied(int index) {
+        return (occupied(index >>> 6) & (1L << index)) != 0;
+    }
+
     /**
      * Return the contents of _board in the order of SQUARE_LIST as a sequence
      * of characters: the toString values of the current turn and Pieces.
@@ -624,52 +1147,6 @@ class Board {
         return new String(result);
     }
 
-    /**
-     * Decode the encodedBoard for reset usage.
-     *
-     * @param ec Encoded String.
-     * @return A state that represents EC.
-     */
-    private HashMap<Square, Piece> decodedString(String ec) {
-        HashMap<Square, Piece> ecState = new HashMap<>();
-        if (!ec.matches("[WB][-WBK]{81}")) {
-            throw new IllegalArgumentException(
-                    String.format("Failed to decode string. "
-                            + "\n string: %s", ec));
-        }
-        if (ec.charAt(0) == 'W') {
-            _turn = WHITE;
-        } else if (ec.charAt(0) == 'B') {
-            _turn = BLACK;
-        }
-        for (int i = 1; i < ec.length(); i++) {
-            switch (ec.charAt(i)) {
-            case '-': {
-                ecState.put(sq(i - 1), EMPTY);
-                break;
-            }
-            case 'B': {
-                ecState.put(sq(i - 1), BLACK);
-                break;
-            }
-            case 'W': {
-                ecState.put(sq(i - 1), WHITE);
-                break;
-            }
-            case 'K': {
-                ecState.put(sq(i - 1), KING);
-                break;
-            }
-            default: {
-                throw new IllegalArgumentException(String.format(
-                        "Wrong encoded board string.\n ec: %s", ec
-                ));
-            }
-            }
-        }
-        return ecState;
-    }
-
     @Override
     public boolean equals(Object T) {
         return T instanceof Board
@@ -678,8 +1155,11 @@ class Board {
                 && moveCount() == ((Board) T).moveCount()
                 && repeatedPosition() == ((Board) T).repeatedPosition()
                 && moveLimit() == ((Board) T).moveLimit()
-                && _state.equals(((Board) T)._state)
-                && _stateList.equals(((Board) T)._stateList);
+                && Arrays.equals(_bits, ((Board) T)._bits)
+                && Arrays.equals(_undoMoves, 0, _undoSize,
+                        ((Board) T)._undoMoves, 0, ((Board) T)._undoSize)
+                && Arrays.equals(_undoCaptures, 0, _undoSize,
+                        ((Board) T)._undoCaptures, 0, ((Board) T)._undoSize);
     }
 
     @Override
@@ -688,15 +1168,6 @@ class Board {
     }
 
 
-    /**
-     * Get the state list of the board. For test usage.
-     *
-     * @return state list.
-     */
-    ArrayList<String> getLists() {
-        return _stateList;
-    }
-
     /**
      * Piece whose turn it is (WHITE or BLACK).
      */
@@ -719,11 +1190,63 @@ class Board {
      */
     private int _limitCount;
     /**
-     * The current state of the board, i.e., record the content of each square.
+     * The current state of the board as one 81-bit square set per Piece:
+     * _bits[word(P, 0)] holds squares 0-63 occupied by P and
+     * _bits[word(P, 1)] holds squares 64-80.  The EMPTY words are unused;
+     * a square is empty iff it is in none of the other sets.
+     */
+    private final long[] _bits = new long[8];
+    /**
+     * The square of the KING, kept in step with _bits by put, or null if
+     * there is no KING on the board.
+     */
+    private Square _king;
+    /**
+     * _pieceCounts[P.ordinal()] is the number of squares holding P, kept
+     * in step with _bits by put.
+     */
+    private final int[] _pieceCounts = new int[PIECES.length];
+    /**
+     * The number of black pieces next to _king, kept by put.
+     */
+    private int _kingNeighbors;
+    /**
+     * _kingBlockers[D] is the number of pieces between _king and the
+     * edge in direction D, kept by put.
+     */
+    private final int[] _kingBlockers = new int[4];
+    /**
+     * Scratch space for the search in kingEscapeDistance.
+     */
+    private final int[] _escapeQueue = new int[NUM_SQUARES];
+    /**
+     * The Zobrist key of the current position (see key()).
+     */
+    private long _key;
+
+    /**
+     * _imageKeys[S], for S > 0, is the key of the image of the current
+     * position under symmetry S.  _imageKeys[0] is unused.
+     */
+    private final long[] _imageKeys = new long[NUM_SYMMETRIES];
+    /**
+     * The keys of the positions reached since the initial position
+     * or the last clearUndo.
+     */
+    private LongSet _positions;
+    /**
+     * The undo stack, holding _undoSize entries.  For each move made,
+     * _undoMoves holds FROM.index() << 7 | TO.index() and _undoCaptures
+     * holds the pieces it captured, CAPTURE_BITS bits apiece (see
+     * remove).
+     */
+    private int _undoSize;
+    /**
+     * The moves on the undo stack.
      */
-    private HashMap<Square, Piece> _state;
+    private int[] _undoMoves = new int[INITIAL_UNDO_CAPACITY];
     /**
-     * Record of the states in previous.
+     * The captures on the undo stack.
      */
-    private ArrayList<String> _stateList;
+    private int[] _undoCaptures = new int[INITIAL_UNDO_CAPACITY];
 }
@@ -2,6 +2,8 @@ package tablut;
 
 import org.junit.Test;
 
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 import static tablut.Piece.*;
@@ -243,4 +245,260 @@ public class BoardTest {
         assertEquals(WHITE, board.winner());
     }
 
+    @Test
+    public void testPieceLocations() {
+        Board board = new Board();
+        assertEquals(9, board.pieceLocations(WHITE).size());
+        assertEquals(16, board.pieceLocations(BLACK).size());
+        assertEquals(56, board.pieceLocations(EMPTY).size());
+        assertEquals(sq("e", "5"), board.kingPosition());
+        board.makeMove(mv("f1-3"));
+        board.makeMove(mv("e6-f"));
+        board.makeMove(mv("d1-3"));
+        assertEquals(8, board.pieceLocations(WHITE).size());
+        assertFalse(board.pieceLocations(WHITE).contains(sq("e", "3")));
+        assertTrue(board.pieceLocations(BLACK).contains(sq("d", "3")));
+        board.put(EMPTY, sq("e", "5"));
+        board.put(KING, sq("i", "9"));
+        assertEquals(sq("i", "9"), board.kingPosition());
+        assertEquals(KING, board.get(sq("i", "9")));
+    }
+
+    @Test
+    public void testKey() {
+        Board b1 = new Board();
+        Board b2 = new Board();
+        long initial = b1.key();
+        b1.makeMove(mv("f1-3"));
+        b1.makeMove(mv("e6-f"));
+        b1.makeMove(mv("d1-3"));
+        b2.makeMove(mv("d1-3"));
+        b2.makeMove(mv("e6-f"));
+        b2.makeMove(mv("f1-3"));
+        assertEquals(b1.key(), b2.key());
+        assertEquals(b1.key(), new Board(b1).key());
+        b1.undo();
+        assertNotEquals(b1.key(), b2.key());
+        b1.undo();
+        b1.undo();
+        assertEquals(initial, b1.key());
+    }
+
+    @Test
+    public void testKingPosition() {
+        Board board = new Board();
+        buildBoard(board, CAPTURE_8);
+        assertEquals(sq("h", "6"), board.kingPosition());
+        board.makeMove(mv("g2-6"));
+        assertNull(board.kingPosition());
+        board.undo();
+        assertEquals(sq("h", "6"), board.kingPosition());
+        assertEquals(sq("h", "6"), new Board(board).kingPosition());
+        board.init();
+        assertEquals(sq("e", "5"), board.kingPosition());
+    }
+
+    @Test
+    public void testPackedMoves() {
+        Board board = new Board();
+        buildBoard(board, MOVE_LIST_TEST);
+        int[] moves = new int[1 + Board.MAX_MOVES];
+        int end = board.legalMoves(BLACK, moves, 1);
+        List<Move> list = board.legalMoves(BLACK);
+        assertEquals(list.size(), end - 1);
+        for (int i = 1; i < end; i++) {
+            assertEquals(list.get(i - 1), mv(moves[i]));
+            assertEquals(moves[i], mv(moves[i]).packed());
+        }
+        board.makeMove(moves[1]);
+        assertEquals(WHITE, board.turn());
+    }
+
+    @Test
+    public void testHasMove() {
+        Board board = new Board();
+        for (Square s : SQUARE_LIST) {
+            board.put(EMPTY, s);
+        }
+        board.put(BLACK, sq("e", "6"));
+        board.put(WHITE, sq("d", "6"));
+        board.put(WHITE, sq("f", "6"));
+        board.put(WHITE, sq("e", "7"));
+        board.put(WHITE, sq("e", "4"));
+        board.put(KING, sq("a", "1"));
+        assertFalse(board.hasMove(BLACK));
+        assertTrue(board.hasMove(WHITE));
+        board.put(EMPTY, sq("e", "4"));
+        assertTrue(board.hasMove(BLACK));
+        assertEquals(4, board.legalMoves(BLACK).size());
+    }
+
+    @Test
+    public void testIncrementalCounts() {
+        Board board = new Board();
+        assertEquals(16, board.pieceCount(BLACK));
+        assertEquals(8, board.pieceCount(WHITE));
+        assertEquals(1, board.pieceCount(KING));
+        assertEquals(0, board.kingNeighbors());
+        for (int d = 0; d < 4; d += 1) {
+            assertEquals(4, board.kingBlockers(d));
+        }
+        board.makeMove(mv("e8-h"));
+        assertEquals(3, board.kingBlockers(0));
+        board.makeMove(mv("e6-h"));
+        assertEquals(2, board.kingBlockers(0));
+        board.put(BLACK, sq("e", "6"));
+        assertEquals(1, board.kingNeighbors());
+        assertEquals(17, board.pieceCount(BLACK));
+        board.put(EMPTY, sq("e", "6"));
+        board.undo();
+        board.undo();
+        assertEquals(0, board.kingNeighbors());
+        assertEquals(4, board.kingBlockers(0));
+        assertTrue(board.isOpenLine(sq("c", "7").index(), 0));
+        assertFalse(board.isOpenLine(sq("c", "7").index(), 1));
+        assertFalse(board.isOpenLine(sq("c", "9").index(), 0));
+    }
+
+    @Test
+    public void testKingEscapeDistance() {
+        Board board = new Board();
+        assertEquals(Board.ESCAPE_LIMIT, board.kingEscapeDistance());
+        for (Square s : SQUARE_LIST) {
+            board.put(EMPTY, s);
+        }
+        board.put(KING, sq("e", "5"));
+        assertEquals(1, board.kingEscapeDistance());
+        board.put(BLACK, sq("e", "7"));
+        board.put(WHITE, sq("e", "4"));
+        board.put(WHITE, sq("d", "5"));
+        board.put(WHITE, sq("f", "5"));
+        assertEquals(2, board.kingEscapeDistance());
+        board.put(WHITE, sq("b", "6"));
+        board.put(WHITE, sq("h", "6"));
+        board.put(BLACK, sq("d", "8"));
+        board.put(BLACK, sq("f", "8"));
+        board.put(BLACK, sq("g", "8"));
+        assertEquals(3, board.kingEscapeDistance());
+        board.put(KING, sq("a", "5"));
+        assertEquals(0, board.kingEscapeDistance());
+    }
+
+    @Test
+    public void testCanonicalKey() {
+        Board board = new Board();
+        assertEquals(board.key(), board.canonicalKey());
+        board.makeMove(mv("d1-3"));
+        board.makeMove(mv("c5-3"));
+        for (int sym = 0; sym < NUM_SYMMETRIES; sym += 1) {
+            Board image = new Board(board);
+            for (Square s : SQUARE_LIST) {
+                image.put(EMPTY, s);
+            }
+            for (Square s : SQUARE_LIST) {
+                image.put(board.get(s), sq(SYMMETRIES[sym][s.index()]));
+            }
+            assertEquals(board.key(sym), image.key());
+            assertEquals(board.canonicalKey(), image.canonicalKey());
+            int move = mv("a4-c").packed();
+            int moved = Move.transform(move, sym);
+            assertEquals(move,
+                    Move.transform(moved, INVERSE_SYMMETRIES[sym]));
+        }
+        assertNotEquals(board.key(), board.key(1));
+    }
+
+    @Test
+    public void testPerft() {
+        for (int p = 0; p < Perft.POSITIONS.length; p += 1) {
+            Board board = Perft.position(Perft.POSITIONS[p]);
+            String before = board.encodedBoard();
+            long key = board.key();
+            for (int d = 1; d <= 3; d += 1) {
+                assertEquals(Perft.COUNTS[p][d - 1], Perft.count(board, d));
+            }
+            long total = 0;
+            for (long nodes : Perft.divide(board, 2).values()) {
+                total += nodes;
+            }
+            assertEquals(Perft.COUNTS[p][1], total);
+            assertEquals(before, board.encodedBoard());
+            assertEquals(key, board.key());
+        }
+        assertEquals(1, Perft.count(new Board(), 0));
+    }
+
+    @Test
+    public void testUndoMultipleCapture() {
+        Board board = position(BLACK, "g3", new String[] {"b7", "d7", "c8"},
+                new String[] {"a7", "e7", "c9", "c2"});
+        String before = snapshot(board);
+        board.makeMove(mv("c2-7"));
+        assertEquals(0, board.pieceCount(WHITE));
+        assertEquals(EMPTY, board.get(sq("b7")));
+        assertEquals(EMPTY, board.get(sq("d7")));
+        assertEquals(EMPTY, board.get(sq("c8")));
+        assertNull(board.winner());
+        board.undo();
+        assertEquals(before, snapshot(board));
+    }
+
+    @Test
+    public void testUndoKingCapture() {
+        Board board = position(BLACK, "g3", new String[] {"b2"},
+                new String[] {"f3", "h9", "a1"});
+        String before = snapshot(board);
+        board.makeMove(mv("h9-3"));
+        assertEquals(BLACK, board.winner());
+        assertNull(board.kingPosition());
+        board.undo();
+        assertNull(board.winner());
+        assertEquals(sq("g3"), board.kingPosition());
+        assertEquals(before, snapshot(board));
+    }
+
+    /**
+     * Return a board with the king on KING, whites on WHITES and blacks
+     * on BLACKS, with TURN to move.
+     */
+    private static Board position(Piece turn, String king, String[] whites,
+                                  String[] blacks) {
+        Board board = new Board();
+        for (int col = 0; col < Board.SIZE; col += 1) {
+            for (int row = 0; row < Board.SIZE; row += 1) {
+                board.put(EMPTY, sq(col, row));
+            }
+        }
+        board.put(KING, sq(king));
+        for (String white : whites) {
+            board.put(WHITE, sq(white));
+        }
+        for (String black : blacks) {
+            board.put(BLACK, sq(black));
+        }
+        board.setTurn(turn);
+        board.clearUndo();
+        return board;
+    }
+
+    /**
+     * Return a description of everything about BOARD that undo must
+     * restore: its contents, keys, piece counts and king blockers.
+     */
+    private static String snapshot(Board board) {
+        StringBuilder result = new StringBuilder(board.encodedBoard());
+        result.append(' ').append(board.key())
+                .append(' ').append(board.canonicalKey());
+        for (int sym = 0; sym < NUM_SYMMETRIES; sym += 1) {
+            result.append(' ').append(board.key(sym));
+        }
+        for (Piece p : new Piece[] {WHITE, BLACK, KING}) {
+            result.append(' ').append(board.pieceCount(p));
+        }
+        for (int d = 0; d < 4; d += 1) {
+            result.append(' ').append(board.kingBlockers(d));
+        }
+        return result.toString();
+    }
+
 }
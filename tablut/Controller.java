@@ -1,8 +1,17 @@
 package tablut;
 
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.Optional;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.function.Consumer;
@@ -27,15 +36,29 @@ final class Controller {
      * to report moves, wins, and errors to user. If LOGFILE is
      * non-null, copies all commands to it. If STRICT, exits the
      * program with non-zero code on receiving an erroneous move from a
-     * player.
+     * player.  Reads commands from the standard input and prints on
+     * the standard output.
      */
     Controller(View view, PrintStream logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
                boolean strict) {
+        this(view, logFile, reporter, manualPlayerTemplate,
+                autoPlayerTemplate, strict, System.in, System.out);
+    }
+
+    /**
+     * Controller as for the constructor above, but reading commands
+     * from INPUT and printing on OUTPUT, so that several can run at
+     * once.
+     */
+    Controller(View view, PrintStream logFile, Reporter reporter,
+               Player manualPlayerTemplate, Player autoPlayerTemplate,
+               boolean strict, InputStream input, PrintStream output) {
         _view = view;
         _playing = false;
         _logFile = logFile;
-        _input = new Scanner(System.in);
+        _input = new Scanner(input);
+        _output = output;
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
@@ -55,11 +78,15 @@ final class Controller {
         while (_playing) {
             _view.update(this);
             String command;
-            if (_winner == null) {
-                if (_board.turn() == WHITE) {
-                    command = _white.myMove();
+            if (_deferred != null) {
+                command = _deferred;
+                _deferred = null;
+            } else if (_winner == null) {
+                Player player = _board.turn() == WHITE ? _white : _black;
+                if (player.isManual()) {
+                    command = player.myMove();
                 } else {
-                    command = _black.myMove();
+                    command = awaitMove(player);
                 }
             } else {
                 command = _nonPlayer.myMove();
@@ -76,11 +103,46 @@ final class Controller {
                 }
             }
         }
+        _white.close();
+        _black.close();
         if (_logFile != null) {
             _logFile.close();
         }
     }
 
+    /**
+     * Return the move PLAYER, an automated player, finds, while
+     * accepting commands from the manual player.  A command received
+     * before the move is found (other than a move, which is misplaced)
+     * abandons the search and is returned instead, so that it takes
+     * effect at once; PLAYER searches again afterwards if it is still
+     * to move.  If the move was found anyway, returns it, and the
+     * command is executed next.
+     */
+    private String awaitMove(Player player) {
+        CompletableFuture<String> move = player.myMoveAsync();
+        while (true) {
+            try {
+                return move.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException excp) {
+                /* Still thinking: check for commands. */
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            }
+            String command = _nonPlayer.pollCommand();
+            if (command == null || command.isEmpty()) {
+                continue;
+            } else if (Move.isGrammaticalMove(command)) {
+                reportError("misplaced move");
+            } else if (player.cancelMove()) {
+                return command;
+            } else {
+                _deferred = command;
+                return move.join();
+            }
+        }
+    }
+
     /**
      * Return the current board.  The value returned should not be
      * modified.
@@ -89,6 +151,14 @@ final class Controller {
         return _board;
     }
 
+    /**
+     * Return the time in milliseconds automated players may spend
+     * choosing a move, or 0 if they search to a fixed depth instead.
+     */
+    int timeLimit() {
+        return _timeLimit;
+    }
+
     /**
      * Return a random integer in the range 0 inclusive to U, exclusive.
      * Available for use by AIs that use random selections in some cases.
@@ -114,17 +184,93 @@ final class Controller {
      * leading and trailing whitespace. First issues a prompt iff PROMPT.
      */
     String readLine(boolean prompt) {
-        if (prompt) {
-            System.out.print("> ");
-            System.out.flush();
+        if (prompt && _prompt) {
+            _output.print("> ");
+            _output.flush();
         }
-        if (_input.hasNextLine()) {
+        if (_typed != null) {
+            try {
+                Optional<String> line = _typed.take();
+                if (line.isEmpty()) {
+                    _typed.add(line);
+                }
+                return line.orElse(null);
+            } catch (InterruptedException excp) {
+                throw new IllegalStateException(excp);
+            }
+        } else if (_input.hasNextLine()) {
             return _input.nextLine().trim();
         } else {
             return null;
         }
     }
 
+    /**
+     * Return the next line of input that has already been read ahead,
+     * trimmed, or null if there is none (or I do not read ahead).  Does
+     * not wait.
+     */
+    String pollLine() {
+        if (_typed == null) {
+            return null;
+        }
+        Optional<String> line = _typed.peek();
+        if (line == null || line.isEmpty()) {
+            return null;
+        }
+        _typed.remove();
+        return line.get();
+    }
+
+    /**
+     * Read input lines as they are typed, in a thread of their own, so
+     * that commands are seen while an automated player is thinking.
+     * Intended for interactive input only: a script would have all its
+     * commands seen at once.
+     */
+    void readAhead() {
+        _typed = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> {
+            while (_input.hasNextLine()) {
+                _typed.add(Optional.of(_input.nextLine().trim()));
+            }
+            _typed.add(Optional.empty());
+        }, "tablut-input");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Return the stream on which I, and my players, print.
+     */
+    PrintStream output() {
+        return _output;
+    }
+
+    /**
+     * Prompt for input lines iff ON, as I do initially.
+     */
+    void setPrompt(boolean on) {
+        _prompt = on;
+    }
+
+    /**
+     * Have automated players search in POOL (null for none, as
+     * initially), shared with other controllers' players, instead of
+     * threads of their own.
+     */
+    void setComputePool(Executor pool) {
+        _computePool = pool;
+    }
+
+    /**
+     * Return the pool in which automated players search, or null if
+     * they use threads of their own.
+     */
+    Executor computePool() {
+        return _computePool;
+    }
+
     /**
      * Return true iff white is a manual player.
      */
@@ -171,6 +317,26 @@ final class Controller {
         }
     }
 
+    /**
+     * Write STATS, which describe how the automated player for SIDE
+     * found the move it is about to make, as a line of JSON to my
+     * statistics log, if I have one.
+     */
+    void logStats(Piece side, SearchStats stats) {
+        if (_statsLog != null) {
+            _statsLog.println(stats.toJson(side, _board.moveCount() + 1));
+            _statsLog.flush();
+        }
+    }
+
+    /**
+     * Append a line of JSON describing each move found by an automated
+     * player to LOG (null for none).
+     */
+    void setStatsLog(PrintStream log) {
+        _statsLog = log;
+    }
+
     /**
      * A Command is pair (<pattern>, <processor>), where <pattern> is a
      * Matcher that matches instances of a particular command, and
@@ -206,18 +372,21 @@ final class Controller {
         new Command("new$", this::doNew),
         new Command("seed\\s+(\\d+)$", this::doSeed),
         new Command("dump$", this::doDump),
+        new Command("stats$", this::doStats),
+        new Command("perft\\s+(\\d+)(\\s+divide)?$", this::doPerft),
         new Command("undo$", this::doUndo),
         new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
+        new Command("auto\\s+(white|black)(?:\\s+(ai|mcts))?$", this::doAuto),
         new Command("limit\\s+(\\d+)$", this::doLimit),
+        new Command("time\\s+(\\d+)$", this::doTime),
         new Command("toggle\\s+" + SQ + "$", this::doToggle),
         new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
     };
 
     /**
-     * A Matcher whose Pattern matches comments.
+     * A Pattern that matches comments.
      */
-    private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
+    private static final Pattern COMMENT = Pattern.compile("#.*");
 
     /**
      * Check that CMND is one of the valid Tablut commands and execute it, if
@@ -229,8 +398,7 @@ final class Controller {
             _logFile.flush();
         }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
+        cmnd = COMMENT.matcher(cmnd).replaceFirst("").trim().toLowerCase();
 
         if (cmnd.isEmpty()) {
             return;
@@ -249,6 +417,7 @@ final class Controller {
      * Command "new".
      */
     private void doNew(Matcher unused) {
+        abandonMoves();
         _board.init();
         _winner = null;
     }
@@ -257,11 +426,14 @@ final class Controller {
      * Command "manual <color>", where <color> is COLOR.group(1).
      */
     private void doManual(Matcher color) {
+        abandonMoves();
         switch (color.group(1)) {
         case "black":
+            _black.close();
             _black = _manualPlayerTemplate.create(BLACK, this);
             break;
         case "white":
+            _white.close();
             _white = _manualPlayerTemplate.create(WHITE, this);
             break;
         default:
@@ -271,15 +443,22 @@ final class Controller {
     }
 
     /**
-     * Command "auto <color>", where <color> is COLOR.group(1).
+     * Command "auto <color> [<kind>]", where <color> is COLOR.group(1)
+     * and <kind>, if present, is COLOR.group(2): "ai" for the alpha-beta
+     * player (the default) or "mcts" for the Monte Carlo player.
      */
     private void doAuto(Matcher color) {
+        Player template = "mcts".equals(color.group(2))
+                ? _mctsPlayerTemplate : _autoPlayerTemplate;
+        abandonMoves();
         switch (color.group(1)) {
         case "black":
-            _black = _autoPlayerTemplate.create(BLACK, this);
+            _black.close();
+            _black = template.create(BLACK, this);
             break;
         case "white":
-            _white = _autoPlayerTemplate.create(WHITE, this);
+            _white.close();
+            _white = template.create(WHITE, this);
             break;
         default:
             assert false;
@@ -309,6 +488,7 @@ final class Controller {
             piece = EMPTY;
             break;
         }
+        abandonMoves();
         _board.put(piece, sq);
         _board.clearUndo();
     }
@@ -317,6 +497,7 @@ final class Controller {
      * Command "quit".
      */
     private void doQuit(Matcher unused) {
+        abandonMoves();
         _playing = false;
     }
 
@@ -342,11 +523,25 @@ final class Controller {
         }
     }
 
+    /**
+     * Command "time MS" where MS is the first captured group of MAT.
+     */
+    private void doTime(Matcher mat) {
+        try {
+            _timeLimit = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
     /**
      * Execute a move command matched in MAT.
      */
     private void doMove(Matcher mat) {
-        _board.makeMove(Move.mv(mat.group(0)));
+        Move move = Move.mv(mat.group(0));
+        _board.makeMove(move);
+        _white.moveMade(move);
+        _black.moveMade(move);
         if (_winner == null) {
             _winner = _board.winner();
             if (_winner != null) {
@@ -360,7 +555,39 @@ final class Controller {
      * Dump the contents of the board on standard output.
      */
     private void doDump(Matcher unused) {
-        System.out.printf("===%n%s===%n", _board);
+        _output.printf("===%n%s===%n", _board);
+    }
+
+    /**
+     * Command "stats".  Print on standard output what each automated
+     * player did to find its last move.
+     */
+    private void doStats(Matcher unused) {
+        for (Player player : new Player[]{_black, _white}) {
+            SearchStats stats = player.stats();
+            if (stats != null) {
+                _output.printf("%s: %s%n", player.myPiece().toName(),
+                        stats);
+            }
+        }
+    }
+
+    /**
+     * Command "perft N [divide]", where N is the first group of MAT and
+     * the second group is present for "divide".  Count the positions N
+     * plies from the current one, and report the count and the rate of
+     * counting on standard output, preceded with "divide" by the count
+     * below each legal move.
+     */
+    private void doPerft(Matcher mat) {
+        int depth;
+        try {
+            depth = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        Perft.report(new Board(_board), depth, mat.group(2) != null,
+                _output);
     }
 
     /**
@@ -369,6 +596,7 @@ final class Controller {
      */
     private void doUndo(Matcher unused) {
         if (_board.moveCount() > 1) {
+            abandonMoves();
             _board.undo();
             _board.undo();
             _winner = null;
@@ -376,6 +604,24 @@ final class Controller {
         }
     }
 
+    /**
+     * Stop whatever the players are doing in the background on the
+     * current position, which is about to change, or the players
+     * themselves.
+     */
+    private void abandonMoves() {
+        _white.cancelMove();
+        _black.cancelMove();
+    }
+
+    /**
+     * Use TEMPLATE as the exemplar for players selected by "auto <color>
+     * mcts".
+     */
+    void setMctsPlayerTemplate(Player template) {
+        _mctsPlayerTemplate = template;
+    }
+
     /**
      * Set my board as BOARD.
      * @param board board to be set as.
@@ -404,6 +650,11 @@ final class Controller {
      */
     private View _view;
 
+    /**
+     * Time limit for automated players' moves, in milliseconds, or 0.
+     */
+    private int _timeLimit;
+
     /**
      * My pseudo-random number generator.
      */
@@ -414,11 +665,49 @@ final class Controller {
      */
     private PrintStream _logFile;
 
+    /**
+     * Log of the statistics of automated players' moves, or null.
+     */
+    private PrintStream _statsLog;
+
     /**
      * Input source.
      */
     private Scanner _input;
 
+    /**
+     * Where I print.
+     */
+    private PrintStream _output;
+
+    /**
+     * True iff I prompt for input lines.
+     */
+    private boolean _prompt = true;
+
+    /**
+     * Where automated players search, or null.
+     */
+    private Executor _computePool;
+
+    /**
+     * Lines read ahead from _input, ending with an empty value at the
+     * end of input, or null if I do not read ahead.
+     */
+    private BlockingQueue<Optional<String>> _typed;
+
+    /**
+     * A command received while an automated player was thinking, to be
+     * executed after its move, or null.
+     */
+    private String _deferred;
+
+    /**
+     * Milliseconds between checks for commands while an automated
+     * player is thinking.
+     */
+    private static final long POLL_INTERVAL = 20;
+
     /**
      * The current White and Black players, each created from
      * _autoPlayerTemplate or _manualPlayerTemplate.
@@ -436,6 +725,11 @@ final class Controller {
      */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
 
+    /**
+     * The current template for Monte Carlo players.
+     */
+    private Player _mctsPlayerTemplate = new MonteCarloAI();
+
     /**
      * Reporter for messages and errors.
      */
@@ -198,6 +198,15 @@ class GUI extends TopLevel implements View, Reporter {
         }
     }
 
+    /**
+     * Return the next command from a menu item, or null if there is
+     * none, without waiting.  Moves are not collected from our widget
+     * meanwhile.
+     */
+    String pollCommand() {
+        return _pendingCommands.poll();
+    }
+
     @Override
     public void update(Controller controller) {
         Board board = controller.board();
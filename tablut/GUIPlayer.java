@@ -48,6 +48,12 @@ class GUIPlayer extends Player implements Reporter {
         }
     }
 
+    @Override
+    String pollCommand() {
+        String command = _controller.pollLine();
+        return command != null ? command : _gui.pollCommand();
+    }
+
     @Override
     public void reportError(String fmt, Object... args) {
         _gui.reportError(fmt, args);
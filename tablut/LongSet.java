@@ -0,0 +1,156 @@
+package tablut;
+
+import java.util.Arrays;
+
+/**
+ * A multiset of longs, stored in an open-addressed table of primitives so
+ * that membership tests and updates neither box nor allocate.  Used to
+ * record the position keys seen in a game.
+ *
+ * @author Junyi Cao
+ */
+final class LongSet {
+
+    /**
+     * An empty set.
+     */
+    LongSet() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * An empty set with room for about CAPACITY / 2 distinct keys before
+     * it grows.  CAPACITY must be a power of two.
+     */
+    private LongSet(int capacity) {
+        _keys = new long[capacity];
+        _counts = new int[capacity];
+    }
+
+    /**
+     * A copy of MODEL.
+     */
+    LongSet(LongSet model) {
+        _keys = model._keys.clone();
+        _counts = model._counts.clone();
+        _size = model._size;
+    }
+
+    /**
+     * Return true iff KEY is in me.
+     */
+    boolean contains(long key) {
+        return _counts[slot(key)] > 0;
+    }
+
+    /**
+     * Add one occurrence of KEY.
+     */
+    void add(long key) {
+        int i = slot(key);
+        if (_counts[i] == 0) {
+            _keys[i] = key;
+            _size += 1;
+        }
+        _counts[i] += 1;
+        if (2 * _size > _keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Remove one occurrence of KEY, if present.
+     */
+    void remove(long key) {
+        int i = slot(key);
+        if (_counts[i] == 0) {
+            return;
+        }
+        _counts[i] -= 1;
+        if (_counts[i] > 0) {
+            return;
+        }
+        _size -= 1;
+        int mask = _keys.length - 1;
+        for (int j = (i + 1) & mask; _counts[j] > 0; j = (j + 1) & mask) {
+            int home = home(_keys[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                _keys[i] = _keys[j];
+                _counts[i] = _counts[j];
+                _counts[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Remove all keys.
+     */
+    void clear() {
+        Arrays.fill(_counts, 0);
+        _size = 0;
+    }
+
+    /**
+     * Return the number of distinct keys in me.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return the preferred slot for KEY.
+     */
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (_keys.length - 1);
+    }
+
+    /**
+     * Return the slot holding KEY, or the empty slot where it would go.
+     */
+    private int slot(long key) {
+        int mask = _keys.length - 1;
+        int i = home(key);
+        while (_counts[i] > 0 && _keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Double my capacity.
+     */
+    private void grow() {
+        long[] keys = _keys;
+        int[] counts = _counts;
+        _keys = new long[2 * keys.length];
+        _counts = new int[2 * keys.length];
+        for (int i = 0; i < keys.length; i += 1) {
+            if (counts[i] > 0) {
+                int j = slot(keys[i]);
+                _keys[j] = keys[i];
+                _counts[j] = counts[i];
+            }
+        }
+    }
+
+    /**
+     * Initial table size.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * The keys in each slot.
+     */
+    private long[] _keys;
+    /**
+     * The number of occurrences of the key in each slot (0 if the slot is
+     * empty).
+     */
+    private int[] _counts;
+    /**
+     * Number of distinct keys.
+     */
+    private int _size;
+}
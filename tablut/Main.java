@@ -24,14 +24,26 @@ public class Main {
 
         CommandArgs options =
                 new CommandArgs("--display --testing "
-                        + "--strict --log={0,1} --={0,2}",
+                        + "--strict --log={0,1} --tt={0,1} --threads={0,1} "
+                        + "--engine={0,1} --tablebase={0,1} --book={0,1} "
+                        + "--stats={0,1} --ponder --server={0,1} "
+                        + "--={0,2}",
                         args);
         if (!options.ok()) {
             System.err.println("Usage: java tablut.Main [--display]"
-                    + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                    + " [--log=FILE] [--strict] [--tt=MEGABYTES]"
+                    + " [--threads=N] [--engine=smp|ybwc]"
+                    + " [--tablebase=FILE] [--book=FILE]"
+                    + " [--stats=FILE] [--ponder] [--server=PORT]"
+                    + " [INPUT [OUTPUT]]");
             System.exit(1);
         }
 
+        if (options.contains("--server")) {
+            serve(options);
+            return;
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -54,6 +66,10 @@ public class Main {
         }
 
         Controller control = getController(options);
+        if (files.isEmpty() && !options.contains("--display")
+                && System.console() != null) {
+            control.readAhead();
+        }
         System.out.println("Tablut 61B, staff version 1.0");
 
         try {
@@ -103,7 +119,109 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                new AI(), options.contains("--strict"));
+        int threads = options.contains("--threads") ? threads(options) : 1;
+        AI ai = getAI(options, threads);
+
+        Controller controller =
+                new Controller(view, log, reporter, manualPlayer, ai,
+                        options.contains("--strict"));
+        controller.setMctsPlayerTemplate(new MonteCarloAI(threads));
+        if (options.contains("--stats")) {
+            try {
+                controller.setStatsLog(new PrintStream(
+                        new FileOutputStream(options.getFirst("--stats"),
+                                true)));
+            } catch (IOException excp) {
+                throw error("Could not open statistics file");
+            }
+        }
+        return controller;
+    }
+
+    /**
+     * Serve games to clients on the port given in OPTIONS, until killed.
+     * Automated players search single-threaded with the SMP engine (the
+     * YBWC engine would start a pool of its own for each player), in a
+     * pool shared by all games of --threads threads (by default, one per
+     * processor), and share one transposition table of --tt megabytes.
+     */
+    private static void serve(CommandArgs options) {
+        int port;
+        try {
+            port = Integer.parseInt(options.getFirst("--server"));
+        } catch (NumberFormatException excp) {
+            throw error("Bad port number");
+        }
+        if (options.contains("--engine")
+                && !options.getFirst("--engine").equalsIgnoreCase("smp")) {
+            throw error("Only the smp engine can be used with --server");
+        }
+        int threads = options.contains("--threads") ? threads(options)
+                : Runtime.getRuntime().availableProcessors();
+        Server server = new Server(port, getAI(options, 1), threads);
+        try {
+            server.serve();
+        } catch (IOException excp) {
+            System.err.printf("Server failed: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Return the thread count given by the --threads option in OPTIONS.
+     */
+    private static int threads(CommandArgs options) {
+        try {
+            return Integer.parseInt(options.getFirst("--threads"));
+        } catch (NumberFormatException excp) {
+            throw error("Bad thread count");
+        }
+    }
+
+    /**
+     * Return the template for automated players indicated by OPTIONS,
+     * searching with THREADS threads.
+     */
+    private static AI getAI(CommandArgs options, int threads) {
+        int tableMegabytes = TranspositionTable.DEFAULT_MEGABYTES;
+        if (options.contains("--tt")) {
+            try {
+                tableMegabytes = Integer.parseInt(options.getFirst("--tt"));
+            } catch (NumberFormatException excp) {
+                throw error("Bad transposition table size");
+            }
+        }
+        AI.Engine engine = AI.Engine.SMP;
+        if (options.contains("--engine")) {
+            try {
+                engine = AI.Engine.valueOf(
+                        options.getFirst("--engine").toUpperCase());
+            } catch (IllegalArgumentException excp) {
+                throw error("Bad search engine");
+            }
+        }
+
+        AI ai = new AI(tableMegabytes, threads, engine);
+        if (options.contains("--tablebase")) {
+            try {
+                ai.setTablebase(
+                        Tablebase.load(options.getFirst("--tablebase")));
+            } catch (IOException excp) {
+                throw error("Could not read tablebase: %s",
+                        excp.getMessage());
+            }
+        }
+        if (options.contains("--book")) {
+            try {
+                ai.setOpeningBook(
+                        OpeningBook.load(options.getFirst("--book")));
+            } catch (IOException excp) {
+                throw error("Could not read opening book: %s",
+                        excp.getMessage());
+            }
+        }
+
+        ai.setPondering(options.contains("--ponder"));
+        return ai;
     }
 }
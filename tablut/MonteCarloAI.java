@@ -0,0 +1,602 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static tablut.Board.MAX_MOVES;
+import static tablut.Move.mv;
+import static tablut.Piece.*;
+import static tablut.Square.sq;
+
+/**
+ * A Player that chooses moves by Monte Carlo tree search (UCT).  Each
+ * iteration descends the tree by the UCB1 rule, expands the leaf it
+ * reaches once the leaf has been visited often enough, plays the game
+ * out from there with random moves (taking any king escape white is
+ * offered), and credits the result to every node on the way down.
+ *
+ * The tree is a pool of nodes held in parallel arrays of primitives; the
+ * children of a node occupy consecutive slots.  Several threads may run
+ * iterations on one tree at once: each node on a thread's path carries
+ * a virtual loss until its playout is counted, steering the other
+ * threads elsewhere.  After each move, the subtree for the position the
+ * opponent leaves is kept as the tree for the next search.
+ *
+ * @author Junyi Cao
+ */
+class MonteCarloAI extends Player {
+
+    /**
+     * Number of playouts per move when there is no time limit.
+     */
+    static final int DEFAULT_PLAYOUTS = 20000;
+
+    /**
+     * A new MonteCarloAI with no piece or controller (intended to
+     * produce a template).
+     */
+    MonteCarloAI() {
+        this(1);
+    }
+
+    /**
+     * A new MonteCarloAI with no piece or controller (intended to
+     * produce a template) that runs playouts in THREADS threads.
+     */
+    MonteCarloAI(int threads) {
+        this(threads, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * A new MonteCarloAI with no piece or controller (intended to
+     * produce a template) that runs playouts in THREADS threads on a
+     * tree of at most POOLSIZE nodes.
+     */
+    MonteCarloAI(int threads, int poolSize) {
+        this(null, null, threads, poolSize);
+    }
+
+    /**
+     * A new MonteCarloAI playing PIECE under control of CONTROLLER that
+     * runs playouts in THREADS threads on a tree of at most POOLSIZE
+     * nodes.
+     */
+    MonteCarloAI(Piece piece, Controller controller, int threads,
+                 int poolSize) {
+        super(piece, controller);
+        _threads = Math.max(1, threads);
+        _poolSize = Math.max(MIN_POOL_SIZE, poolSize);
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MonteCarloAI(piece, controller, _threads, _poolSize);
+    }
+
+    @Override
+    String myMove() {
+        Move move = findMove();
+        _controller.output().println("* " + move);
+        return move.toString();
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    /**
+     * Shut down my helper threads and drop my tree.  My moves are never
+     * abandoned, so I am not finding one when my controller closes me.
+     */
+    @Override
+    void close() {
+        if (_helpers != null) {
+            _helpers.shutdown();
+            _helpers = null;
+        }
+        _pool = _spare = null;
+        _workers = null;
+        _rootBoard = null;
+    }
+
+    /**
+     * Return a move for me from the current position, assuming there
+     * is a move.
+     */
+    private Move findMove() {
+        return findMove(board(), _controller.timeLimit());
+    }
+
+    /**
+     * Return a move from position BOARD for the side to move, assuming
+     * there is a move: the most visited child of the root after running
+     * playouts for LIMIT milliseconds if LIMIT is positive, and
+     * otherwise DEFAULT_PLAYOUTS playouts.  Reuses the tree from my last
+     * move if BOARD follows from it.  Does not modify BOARD.
+     */
+    Move findMove(Board board, int limit) {
+        if (_pool == null) {
+            _pool = new NodePool(_poolSize);
+            _spare = new NodePool(_poolSize);
+            _workers = new Worker[_threads];
+            for (int i = 0; i < _threads; i += 1) {
+                _workers[i] = new Worker();
+            }
+            if (_threads > 1) {
+                _helpers = Executors.newFixedThreadPool(_threads - 1, r -> {
+                    Thread t = new Thread(r, "tablut-mcts");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+        }
+        int root = findRoot(board);
+        if (root < 0) {
+            _pool.clear(ROOT, 0);
+            _size.set(ROOT + 1);
+        } else {
+            reroot(root);
+        }
+        _rootBoard = new Board(board);
+        _rootTurn = board.turn();
+        _timed = limit > 0;
+        _deadline = System.nanoTime() + limit * 1_000_000L;
+        _budget = _timed ? Integer.MAX_VALUE : DEFAULT_PLAYOUTS;
+        _playouts.set(0);
+
+        long seed = _controller == null ? System.nanoTime()
+                : _controller.randInt(Integer.MAX_VALUE);
+        for (int i = 0; i < _threads; i += 1) {
+            _workers[i]._board = new Board(board);
+            _workers[i]._seed = (seed + i) * 0x9E3779B97F4A7C15L | 1;
+        }
+        List<Future<?>> helping = new ArrayList<>();
+        for (int i = 1; i < _threads; i += 1) {
+            helping.add(_helpers.submit(_workers[i]::run));
+        }
+        _workers[0].run();
+        for (Future<?> helper : helping) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+
+        NodePool pool = _pool;
+        int first = pool._firstChild.get(ROOT), best = first;
+        for (int c = first; c < first + pool._childCount[ROOT]; c += 1) {
+            if (pool._visits.get(c) > pool._visits.get(best)) {
+                best = c;
+            }
+        }
+        _played = best;
+        return mv(pool._move[best]);
+    }
+
+    /**
+     * Return the number of playouts through the root of the current
+     * tree, including those kept from earlier moves.
+     */
+    int rootVisits() {
+        return _pool == null ? 0 : _pool._visits.get(ROOT);
+    }
+
+    /**
+     * Return the node for BOARD in the current tree, which is rooted at
+     * _rootBoard, if BOARD follows from _rootBoard by my last move and
+     * one reply, and otherwise -1.
+     */
+    private int findRoot(Board board) {
+        if (_rootBoard == null
+                || board.moveCount() != _rootBoard.moveCount() + 2) {
+            return -1;
+        }
+        int first = _pool._firstChild.get(_played);
+        if (first <= 0) {
+            return -1;
+        }
+        int found = -1;
+        _rootBoard.makeMove(_pool._move[_played]);
+        for (int c = first; c < first + _pool._childCount[_played]
+                && found < 0; c += 1) {
+            _rootBoard.makeMove(_pool._move[c]);
+            if (_rootBoard.key() == board.key()) {
+                found = c;
+            }
+            _rootBoard.undo();
+        }
+        _rootBoard.undo();
+        return found;
+    }
+
+    /**
+     * Make the subtree below NODE the whole tree, with NODE as its root,
+     * by copying it breadth first into _spare and swapping the pools.
+     * Until a copied node's children are copied, its _firstChild slot
+     * holds its index in the old pool.
+     */
+    private void reroot(int node) {
+        NodePool from = _pool, to = _spare;
+        to.copy(ROOT, from, node);
+        to._firstChild.set(ROOT, node);
+        int size = ROOT + 1;
+        for (int i = ROOT; i < size; i += 1) {
+            int old = to._firstChild.get(i);
+            int first = from._firstChild.get(old);
+            if (first <= 0) {
+                to._firstChild.set(i, 0);
+                to._childCount[i] = 0;
+                continue;
+            }
+            int count = from._childCount[old];
+            for (int k = 0; k < count; k += 1) {
+                to.copy(size + k, from, first + k);
+                to._firstChild.set(size + k, first + k);
+            }
+            to._firstChild.set(i, size);
+            to._childCount[i] = count;
+            size += count;
+        }
+        _pool = to;
+        _spare = from;
+        _size.set(size);
+    }
+
+    /**
+     * The nodes of a search tree.  Node N was reached by the packed move
+     * _move[N]; its children are the _childCount[N] nodes starting at
+     * _firstChild[N] once it has been expanded.  _wins[N] counts, in
+     * half points (2 for a win, 1 for an undecided playout), the
+     * results of the _visits[N] playouts through N for the side that
+     * moved into N.
+     */
+    private static final class NodePool {
+
+        /**
+         * A pool of SIZE nodes.
+         */
+        NodePool(int size) {
+            _move = new int[size];
+            _childCount = new int[size];
+            _firstChild = new AtomicIntegerArray(size);
+            _visits = new AtomicIntegerArray(size);
+            _wins = new AtomicIntegerArray(size);
+        }
+
+        /**
+         * Make node N a fresh, unexpanded node reached by MOVE.
+         */
+        void clear(int n, int move) {
+            _move[n] = move;
+            _childCount[n] = 0;
+            _visits.set(n, 0);
+            _wins.set(n, 0);
+            _firstChild.set(n, 0);
+        }
+
+        /**
+         * Copy the move and statistics of node M of FROM into my node N.
+         */
+        void copy(int n, NodePool from, int m) {
+            _move[n] = from._move[m];
+            _visits.set(n, from._visits.get(m));
+            _wins.set(n, from._wins.get(m));
+        }
+
+        /**
+         * Packed move into each node.
+         */
+        private final int[] _move;
+        /**
+         * Number of children of each expanded node.
+         */
+        private final int[] _childCount;
+        /**
+         * First child of each node, or 0 if it is unexpanded, EXPANDING
+         * while a thread expands it, or FULL if the pool had no room.
+         */
+        private final AtomicIntegerArray _firstChild;
+        /**
+         * Playouts through each node, plus pending virtual losses.
+         */
+        private final AtomicIntegerArray _visits;
+        /**
+         * Half points won through each node.
+         */
+        private final AtomicIntegerArray _wins;
+    }
+
+    /**
+     * The state of one thread running playouts.
+     */
+    private final class Worker {
+
+        /**
+         * Run iterations until the playout budget or time runs out.
+         */
+        void run() {
+            while (_playouts.getAndIncrement() < _budget
+                    && (!_timed || System.nanoTime() - _deadline < 0)) {
+                iterate();
+            }
+        }
+
+        /**
+         * Run one iteration: select a path from the root, expanding its
+         * end if it is due, play out from there and record the result
+         * along the path.  _board is at the root position before and
+         * after.
+         */
+        private void iterate() {
+            NodePool pool = _pool;
+            Board board = _board;
+            int node = ROOT, length = 0;
+            pool._visits.addAndGet(node, VIRTUAL_LOSS);
+            _path[length++] = node;
+            while (board.winner() == null && length < _path.length) {
+                int first = pool._firstChild.get(node);
+                if (first <= 0) {
+                    if (first == 0 && (node == ROOT
+                            || pool._visits.get(node) >= EXPANSION_VISITS)
+                            && expand(pool, node)) {
+                        continue;
+                    }
+                    break;
+                }
+                node = select(pool, node, first);
+                board.makeMove(pool._move[node]);
+                pool._visits.addAndGet(node, VIRTUAL_LOSS);
+                _path[length++] = node;
+            }
+
+            Piece winner = board.winner();
+            if (winner == null) {
+                winner = playout();
+            }
+            int result = winner == null ? 1 : winner == _rootTurn ? 2 : 0;
+            for (int i = 0; i < length; i += 1) {
+                pool._visits.addAndGet(_path[i], 1 - VIRTUAL_LOSS);
+                pool._wins.addAndGet(_path[i],
+                        i % 2 == 1 ? result : 2 - result);
+            }
+            for (int i = 1; i < length; i += 1) {
+                board.undo();
+            }
+        }
+
+        /**
+         * Return the child of NODE in POOL, whose children start at
+         * FIRST, with the highest upper confidence bound.  Unvisited
+         * children come first.
+         */
+        private int select(NodePool pool, int node, int first) {
+            double logVisits = Math.log(Math.max(1, pool._visits.get(node)));
+            int best = first;
+            double bestValue = -1;
+            for (int c = first; c < first + pool._childCount[node]; c += 1) {
+                int visits = pool._visits.get(c);
+                if (visits == 0) {
+                    return c;
+                }
+                double value = pool._wins.get(c) / (2.0 * visits)
+                        + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Add the children of NODE, whose position is _board, to POOL,
+         * unless another thread is already doing so or there is no room.
+         * As in playouts, a king escape, if white has one, is the only
+         * child.  Return true iff NODE now has children.
+         */
+        private boolean expand(NodePool pool, int node) {
+            if (!pool._firstChild.compareAndSet(node, 0, EXPANDING)) {
+                return false;
+            }
+            int count = _board.legalMoves(_board.turn(), _moves, 0);
+            int escape = kingEscape(_board, count);
+            if (escape >= 0) {
+                _moves[0] = _moves[escape];
+                count = 1;
+            }
+            int first = _size.get() + count <= _poolSize
+                    ? _size.getAndAdd(count) : _poolSize;
+            if (count == 0 || first + count > _poolSize) {
+                pool._firstChild.set(node, FULL);
+                return false;
+            }
+            for (int i = 0; i < count; i += 1) {
+                pool.clear(first + i, _moves[i]);
+            }
+            pool._childCount[node] = count;
+            pool._firstChild.set(node, first);
+            return true;
+        }
+
+        /**
+         * Play random moves on _board until the game ends or PLAYOUT_PLIES
+         * have been played, then take them back.  White always takes an
+         * immediate king escape.  Return the winner, or, if the game has
+         * not ended, the side AI.staticScore favors (null if neither).
+         */
+        private Piece playout() {
+            Board board = _board;
+            Piece winner;
+            int plies;
+            for (plies = 0; (winner = board.winner()) == null
+                    && plies < PLAYOUT_PLIES; plies += 1) {
+                int end = board.legalMoves(board.turn(), _moves, 0);
+                int escape = kingEscape(board, end);
+                board.makeMove(_moves[escape >= 0 ? escape : nextInt(end)]);
+            }
+            if (winner == null) {
+                int score = AI.staticScore(board);
+                winner = score > 0 ? WHITE : score < 0 ? BLACK : null;
+            }
+            for (; plies > 0; plies -= 1) {
+                board.undo();
+            }
+            return winner;
+        }
+
+        /**
+         * Return the index of a move in _moves[0 .. END-1], the legal moves
+         * on BOARD, that takes the king to an edge, or -1 if there is none
+         * or it is black's move.
+         */
+        private int kingEscape(Board board, int end) {
+            if (board.turn() != WHITE) {
+                return -1;
+            }
+            int king = board.kingPosition().index();
+            for (int i = 0; i < end; i += 1) {
+                if (_moves[i] >>> 7 == king && sq(_moves[i] & 127).isEdge()) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Return a pseudo-random integer in 0 .. N-1 (xorshift).
+         */
+        private int nextInt(int n) {
+            _seed ^= _seed << 13;
+            _seed ^= _seed >>> 7;
+            _seed ^= _seed << 17;
+            return (int) ((_seed >>> 1) % n);
+        }
+
+        /**
+         * My copy of the position being searched.
+         */
+        private Board _board;
+        /**
+         * State of my random number generator.
+         */
+        private long _seed;
+        /**
+         * Move buffer.
+         */
+        private final int[] _moves = new int[MAX_MOVES];
+        /**
+         * The nodes on the current iteration's path, from the root.
+         */
+        private final int[] _path = new int[MAX_PATH];
+    }
+
+    /**
+     * Number of nodes in each pool unless the constructor says
+     * otherwise.  Each node takes 20 bytes in each of the two pools.
+     */
+    static final int DEFAULT_POOL_SIZE = 1 << 19;
+    /**
+     * Fewest nodes in a pool: room for the root and all its children.
+     */
+    private static final int MIN_POOL_SIZE = 1 + MAX_MOVES;
+    /**
+     * The index of the root node.
+     */
+    private static final int ROOT = 0;
+    /**
+     * _firstChild values of nodes being expanded and of nodes that could
+     * not be expanded for lack of room.
+     */
+    private static final int EXPANDING = -1, FULL = -2;
+    /**
+     * Visits (counting virtual losses) after which a leaf is expanded.
+     */
+    private static final int EXPANSION_VISITS = 8;
+    /**
+     * Visits added to each node on a path while its playout is running.
+     */
+    private static final int VIRTUAL_LOSS = 3;
+    /**
+     * Weight of the exploration term of the UCB1 rule.
+     */
+    private static final double EXPLORATION = 1.0;
+    /**
+     * Longest path from the root followed by an iteration.
+     */
+    private static final int MAX_PATH = 256;
+    /**
+     * Longest playout, in plies.
+     */
+    private static final int PLAYOUT_PLIES = 100;
+
+    /**
+     * Number of threads running playouts for each of my moves.
+     */
+    private final int _threads;
+    /**
+     * Number of nodes in each of my pools.
+     */
+    private final int _poolSize;
+
+    /**
+     * The current tree, or null until my first move.
+     */
+    private NodePool _pool;
+    /**
+     * The pool the tree is copied into when it is rerooted.
+     */
+    private NodePool _spare;
+    /**
+     * Number of nodes of _pool in use.
+     */
+    private final AtomicInteger _size = new AtomicInteger();
+
+    /**
+     * The position at the root of the tree.
+     */
+    private Board _rootBoard;
+    /**
+     * The side to move at the root.
+     */
+    private Piece _rootTurn;
+    /**
+     * The child of the root that I last played.
+     */
+    private int _played;
+
+    /**
+     * One Worker per thread; the first runs in the thread calling
+     * findMove.
+     */
+    private Worker[] _workers;
+    /**
+     * Runs the other Workers, or null if I have only one thread.
+     */
+    private ExecutorService _helpers;
+
+    /**
+     * Number of playouts started by the current search.
+     */
+    private final AtomicInteger _playouts = new AtomicInteger();
+    /**
+     * Playouts allowed for the current search.
+     */
+    private int _budget;
+    /**
+     * True iff the current search has a time limit, which ends at the
+     * System.nanoTime() value _deadline.
+     */
+    private boolean _timed;
+    /**
+     * See _timed.
+     */
+    private long _deadline;
+}
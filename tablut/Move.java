@@ -9,6 +9,7 @@ import static tablut.Square.sq;
 import static tablut.Square.NUM_SQUARES;
 import static tablut.Square.ROOK_SQUARES;
 import static tablut.Square.SQUARE_LIST;
+import static tablut.Square.SYMMETRIES;
 
 /**
  * A move in the game of Tablut. As for Squares, Moves are immutable
@@ -58,19 +59,46 @@ final class Move {
         return MOVES[from.index()][to.index()];
     }
 
+    /**
+     * Return the Move whose packed form (see packed()) is MOVE.
+     */
+    static Move mv(int move) {
+        return mv(sq(move >>> 7), sq(move & 127));
+    }
+
+    /**
+     * Return my packed form, FROM.index() << 7 | TO.index(), as written
+     * into move buffers by Board.legalMoves.
+     */
+    int packed() {
+        return (_from.index() << 7) | _to.index();
+    }
+
+    /**
+     * Return the packed MOVE with both of its squares mapped by
+     * SYMMETRY (see Square.SYMMETRIES).  0, meaning no move, stays 0.
+     */
+    static int transform(int move, int symmetry) {
+        if (move == 0) {
+            return 0;
+        }
+        int[] map = SYMMETRIES[symmetry];
+        return (map[move >>> 7] << 7) | map[move & 127];
+    }
+
     /**
      * Return the Move denoted by STR, if STR denotes a move with
      * valid syntax, and null otherwise.
      */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            Square from = sq(_moveMatcher.group(1));
+        Matcher moveMatcher = MOVE_PATTERN.matcher(str);
+        if (moveMatcher.matches()) {
+            Square from = sq(moveMatcher.group(1));
             Square to;
-            if (_moveMatcher.group(5) == null) {
-                to = sq(_moveMatcher.group(4), _moveMatcher.group(3));
+            if (moveMatcher.group(5) == null) {
+                to = sq(moveMatcher.group(4), moveMatcher.group(3));
             } else {
-                to = sq(_moveMatcher.group(2), _moveMatcher.group(5));
+                to = sq(moveMatcher.group(2), moveMatcher.group(5));
             }
             return mv(from, to);
         }
@@ -81,8 +109,7 @@ final class Move {
      * Return true iff STR has the right format for a Move.
      */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return MOVE_PATTERN.matcher(str).matches();
     }
 
     @Override
@@ -165,8 +192,4 @@ final class Move {
      * The printed form of this Move.
      */
     private String _str;
-    /**
-     * A utility Matcher for moves, using MOVE_PATTERN.
-     */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
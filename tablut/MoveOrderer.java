@@ -0,0 +1,182 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Board.THRONE;
+import static tablut.Piece.*;
+import static tablut.Square.sq;
+
+/**
+ * Puts the moves at a search node in the order most likely to produce
+ * early alpha-beta cutoffs.  Moves are ranked in tiers: the move from
+ * the transposition table first, then moves that capture, then king
+ * moves toward an edge, then this ply's two killer moves, and finally
+ * the rest by how often they have caused cutoffs anywhere in the tree
+ * (the history table).  Moves are packed ints as produced by
+ * Board.legalMoves, and all bookkeeping is done in primitive arrays.
+ *
+ * @author Junyi Cao
+ */
+final class MoveOrderer {
+
+    /**
+     * An orderer for searches at most MAXPLY plies deep.
+     */
+    MoveOrderer(int maxPly) {
+        _killers = new int[maxPly + 1][2];
+        _scores = new int[Board.MAX_MOVES];
+    }
+
+    /**
+     * Prepare for a new search: forget killers and age the history
+     * table, so that old cutoffs count for less than new ones.
+     */
+    void newSearch() {
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, 0);
+        }
+        for (int i = 0; i < _history.length; i += 1) {
+            _history[i] >>= 1;
+        }
+    }
+
+    /**
+     * Sort MOVES[START .. END-1], the moves at a node PLY plies from the
+     * root of the search of BOARD, best first.  HASHMOVE is the move
+     * stored for the node in the transposition table, or 0.
+     */
+    void order(Board board, int[] moves, int start, int end,
+               int hashMove, int ply) {
+        int[] scores = _scores;
+        for (int i = start; i < end; i += 1) {
+            int move = moves[i];
+            int score;
+            if (move == hashMove) {
+                score = HASH_SCORE;
+            } else {
+                score = captureScore(board, move);
+                if (score == 0) {
+                    score = kingScore(board, move);
+                }
+                if (score == 0) {
+                    if (move == _killers[ply][0]) {
+                        score = KILLER_SCORE + 1;
+                    } else if (move == _killers[ply][1]) {
+                        score = KILLER_SCORE;
+                    } else {
+                        score = _history[move];
+                    }
+                }
+            }
+            int j = i - start;
+            while (j > 0 && scores[j - 1] < score) {
+                scores[j] = scores[j - 1];
+                moves[start + j] = moves[start + j - 1];
+                j -= 1;
+            }
+            scores[j] = score;
+            moves[start + j] = move;
+        }
+    }
+
+    /**
+     * Record that MOVE, made PLY plies from the root with DEPTH plies
+     * left to search, caused a cutoff on BOARD (before MOVE was made).
+     * Captures are ordered early anyway, so only quiet moves are
+     * remembered.
+     */
+    void cutoff(Board board, int move, int ply, int depth) {
+        if (captureScore(board, move) != 0) {
+            return;
+        }
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        _history[move] = Math.min(MAX_HISTORY, _history[move] + depth * depth);
+    }
+
+    /**
+     * Return CAPTURE_SCORE plus the number of pieces MOVE would capture
+     * on BOARD, or 0 if it captures none.
+     */
+    private static int captureScore(Board board, int move) {
+        int count = captures(board, move);
+        return count == 0 ? 0 : CAPTURE_SCORE + count;
+    }
+
+    /**
+     * Return the number of pieces the packed MOVE would capture on
+     * BOARD.  A piece counts as captured if it lies between the
+     * destination and a friendly piece or the empty throne; the finer
+     * rules for the king and the throne are ignored.
+     */
+    static int captures(Board board, int move) {
+        Square from = sq(move >>> 7), to = sq(move & 127);
+        Piece side = board.get(from).side();
+        int count = 0;
+        for (Square s : to.triSquares(from.direction(to))) {
+            if (s == null) {
+                continue;
+            }
+            Piece victim = board.get(to.between(s));
+            if (victim != EMPTY && victim.side() != side
+                    && (board.get(s).side() == side
+                    || s == THRONE && board.get(s) == EMPTY)) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return KING_SCORE plus a bonus for closeness to the edge if MOVE
+     * is a king move on BOARD that brings the king nearer an edge, and
+     * otherwise 0.
+     */
+    private static int kingScore(Board board, int move) {
+        Square from = sq(move >>> 7), to = sq(move & 127);
+        if (board.get(from) != KING) {
+            return 0;
+        }
+        int before = edgeDistance(from), after = edgeDistance(to);
+        return after < before ? KING_SCORE + Board.SIZE - after : 0;
+    }
+
+    /**
+     * Return the number of squares between S and the nearest edge.
+     */
+    private static int edgeDistance(Square s) {
+        int last = Board.SIZE - 1;
+        return Math.min(Math.min(s.col(), last - s.col()),
+                Math.min(s.row(), last - s.row()));
+    }
+
+    /**
+     * Scores of the tiers, highest first.  History scores stay below
+     * KILLER_SCORE.
+     */
+    private static final int HASH_SCORE = 1 << 30,
+            CAPTURE_SCORE = 1 << 29,
+            KING_SCORE = 1 << 28,
+            KILLER_SCORE = 1 << 27,
+            MAX_HISTORY = KILLER_SCORE - 1;
+
+    /**
+     * _killers[P] holds the two most recent quiet moves that caused a
+     * cutoff P plies from the root, most recent first.
+     */
+    private final int[][] _killers;
+
+    /**
+     * _history[M] measures how often the packed move M has caused a
+     * cutoff, weighted by the depth remaining.
+     */
+    private final int[] _history = new int[1 << 14];
+
+    /**
+     * Scratch space for the scores of the moves being ordered.
+     */
+    private final int[] _scores;
+}
@@ -0,0 +1,181 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntUnaryOperator;
+
+import static tablut.Square.INVERSE_SYMMETRIES;
+
+/**
+ * Weighted moves for positions near the start of the game, as collected
+ * by OpeningBookBuilder and memory-mapped from a file.
+ *
+ * The file holds a header (MAGIC and the number of entries, as ints)
+ * followed by its entries, sorted by key and then move.  An entry is
+ * ENTRY_BYTES long: the canonicalKey() of a position, a move from it
+ * as a packed int mapped by the position's canonicalSymmetry(), and
+ * the move's weight as an int.  Because keys and moves are canonical,
+ * one entry serves all the symmetric images of its position.
+ *
+ * @author Junyi Cao
+ */
+final class OpeningBook {
+
+    /**
+     * First int of an opening book file.
+     */
+    static final int MAGIC = 0x54424F4B;
+
+    /**
+     * Bytes in the header of an opening book file.
+     */
+    static final int HEADER_BYTES = 8;
+
+    /**
+     * Bytes in one entry.
+     */
+    static final int ENTRY_BYTES = 16;
+
+    /**
+     * A book whose entries are in ENTRIES, SIZE of them.
+     */
+    private OpeningBook(ByteBuffer entries, int size) {
+        _entries = entries;
+        _size = size;
+    }
+
+    /**
+     * Return the book in the file named FILENAME, which is mapped into
+     * memory rather than read.
+     */
+    static OpeningBook load(String fileName) throws IOException {
+        try (FileChannel file = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = file.map(FileChannel.MapMode.READ_ONLY,
+                    0, HEADER_BYTES);
+            int magic = header.getInt(0), size = header.getInt(4);
+            if (magic != MAGIC || size < 0
+                    || HEADER_BYTES + (long) size * ENTRY_BYTES
+                    > file.size()) {
+                throw new IOException("not an opening book: " + fileName);
+            }
+            return new OpeningBook(file.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES, (long) size * ENTRY_BYTES), size);
+        }
+    }
+
+    /**
+     * Return my number of entries.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return a move for the side to move on BOARD from among my moves
+     * for it, chosen at random with probability proportional to weight,
+     * or null if I have none.  RANDINT.applyAsInt(N) must return a
+     * random integer from 0 to N-1.  Moves that are illegal (after a
+     * key collision) or lose at once by repeating a position are
+     * skipped.  Does not modify BOARD.
+     */
+    Move chooseMove(Board board, IntUnaryOperator randInt) {
+        if (board.winner() != null) {
+            return null;
+        }
+        int symmetry = board.canonicalSymmetry();
+        int inverse = INVERSE_SYMMETRIES[symmetry];
+        long key = board.key(symmetry);
+        int first = find(key);
+        Board copy = new Board(board);
+        int end = first, total = 0;
+        for (; end < _size && key(end) == key; end += 1) {
+            if (playable(copy, move(end, inverse))) {
+                total += weight(end);
+            }
+        }
+        if (total <= 0) {
+            return null;
+        }
+        int roll = randInt.applyAsInt(total);
+        for (int i = first; i < end; i += 1) {
+            Move move = move(i, inverse);
+            if (playable(copy, move)) {
+                roll -= weight(i);
+                if (roll < 0) {
+                    return move;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return true iff MOVE is legal on BOARD and does not make the side
+     * to move lose at once.
+     */
+    private static boolean playable(Board board, Move move) {
+        if (!board.isLegal(move)) {
+            return false;
+        }
+        Piece side = board.turn();
+        board.makeMove(move);
+        boolean lost = board.winner() == side.opponent();
+        board.undo();
+        return !lost;
+    }
+
+    /**
+     * Return the index of my first entry whose key is at least KEY, or
+     * size() if there is none.
+     */
+    private int find(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Return the key of entry K.
+     */
+    private long key(int k) {
+        return _entries.getLong(k * ENTRY_BYTES);
+    }
+
+    /**
+     * Return the move of entry K, mapped from the canonical image by
+     * symmetry INVERSE, or null if it is not a valid move.
+     */
+    private Move move(int k, int inverse) {
+        int move = Move.transform(_entries.getInt(k * ENTRY_BYTES + 8),
+                inverse);
+        return Move.mv(move);
+    }
+
+    /**
+     * Return the weight of entry K.
+     */
+    private int weight(int k) {
+        return _entries.getInt(k * ENTRY_BYTES + 12);
+    }
+
+    /**
+     * My entries.
+     */
+    private final ByteBuffer _entries;
+
+    /**
+     * My number of entries.
+     */
+    private final int _size;
+}
@@ -0,0 +1,167 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static tablut.OpeningBook.MAGIC;
+
+/**
+ * Builds an OpeningBook from games the AI plays against itself.
+ *
+ * In each game both sides are played by one AI, searching each of the
+ * first few plies for a fixed time and the rest of the game at its
+ * default depth.  To spread the games over more openings, a book ply
+ * is replaced now and then by a random legal move.  For every book ply
+ * the AI's move was played at, the builder counts the move once, and
+ * once more if its side went on to win; that count is the move's
+ * weight in the book.  Games are seeded by number, so a book can be
+ * rebuilt exactly, apart from the effect of timing on the searches.
+ *
+ * @author Junyi Cao
+ */
+public class OpeningBookBuilder {
+
+    /**
+     * Usage: java tablut.OpeningBookBuilder [GAMES [PLIES [MILLIS
+     * [FILE]]]].  Plays GAMES games (default 50), recording the first
+     * PLIES plies of each (default 10), which are searched for MILLIS
+     * milliseconds each (default 1000), and writes the book to FILE
+     * (default tablut.book).
+     */
+    public static void main(String... args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int millis = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        String fileName = args.length > 3 ? args[3] : "tablut.book";
+        OpeningBookBuilder builder = new OpeningBookBuilder();
+        AI ai = new AI();
+        for (int game = 0; game < games; game += 1) {
+            Piece winner =
+                    builder.play(ai, new Random(game), plies, millis);
+            System.out.printf("game %d: %s%n", game + 1,
+                    winner == null ? "unfinished" : winner + " wins");
+        }
+        try {
+            builder.write(fileName);
+        } catch (IOException excp) {
+            System.err.printf("Could not write %s: %s%n", fileName,
+                    excp.getMessage());
+            System.exit(1);
+        }
+        System.out.printf("%d positions, %d moves%n",
+                builder.positions(), builder.entries());
+    }
+
+    /**
+     * Play one game from the initial position with AI on both sides,
+     * recording its first PLIES plies.  Book plies are searched for
+     * MILLIS milliseconds and replaced by a random move, chosen with
+     * RANDOM, with probability DEVIATION.  Return the winner, or null
+     * if the game lasted MAX_GAME_PLIES plies without one.
+     */
+    Piece play(AI ai, Random random, int plies, int millis) {
+        Board board = new Board();
+        List<Board> positions = new ArrayList<>();
+        List<Move> moves = new ArrayList<>();
+        while (board.winner() == null
+                && board.moveCount() < MAX_GAME_PLIES) {
+            Move move;
+            if (board.moveCount() < plies) {
+                move = ai.findMove(board, millis);
+                if (random.nextDouble() < DEVIATION) {
+                    List<Move> legal = board.legalMoves(board.turn());
+                    move = legal.get(random.nextInt(legal.size()));
+                } else {
+                    positions.add(new Board(board));
+                    moves.add(move);
+                }
+            } else {
+                move = ai.findMove(board, 0);
+            }
+            board.makeMove(move);
+        }
+        Piece winner = board.winner();
+        for (int i = 0; i < positions.size(); i += 1) {
+            Board position = positions.get(i);
+            add(position, moves.get(i), winner == position.turn());
+        }
+        return winner;
+    }
+
+    /**
+     * Record that MOVE was played from BOARD by the side to move, which
+     * went on to win iff WON.
+     */
+    void add(Board board, Move move, boolean won) {
+        int symmetry = board.canonicalSymmetry();
+        Map<Integer, Integer> moves = _weights.computeIfAbsent(
+                board.key(symmetry), k -> new TreeMap<>());
+        moves.merge(Move.transform(move.packed(), symmetry), won ? 2 : 1,
+                Integer::sum);
+    }
+
+    /**
+     * Return the number of positions recorded.
+     */
+    int positions() {
+        return _weights.size();
+    }
+
+    /**
+     * Return the number of different moves recorded, over all
+     * positions.
+     */
+    int entries() {
+        int entries = 0;
+        for (Map<Integer, Integer> moves : _weights.values()) {
+            entries += moves.size();
+        }
+        return entries;
+    }
+
+    /**
+     * Write the book recorded so far to the file named FILENAME in the
+     * format read by OpeningBook.load.
+     */
+    void write(String fileName) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries());
+            for (Map.Entry<Long, Map<Integer, Integer>> position
+                    : _weights.entrySet()) {
+                for (Map.Entry<Integer, Integer> move
+                        : position.getValue().entrySet()) {
+                    out.writeLong(position.getKey());
+                    out.writeInt(move.getKey());
+                    out.writeInt(move.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Games are abandoned, without a winner, after this many plies.
+     */
+    static final int MAX_GAME_PLIES = 200;
+
+    /**
+     * Probability that a book ply is played at random.
+     */
+    private static final double DEVIATION = 0.2;
+
+    /**
+     * _weights.get(K).get(M) is the weight of the canonical packed move
+     * M from the position with canonical key K, in order of key and
+     * move.
+     */
+    private final TreeMap<Long, Map<Integer, Integer>> _weights =
+            new TreeMap<>();
+}
@@ -0,0 +1,176 @@
+package tablut;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static tablut.Board.MAX_MOVES;
+import static tablut.Move.mv;
+
+/**
+ * Counts the positions at the end of every sequence of legal moves of
+ * a given length from a position ("perft"), exercising nothing but
+ * Board.legalMoves, makeMove, and undo.  The counts check the move
+ * generator and the capture and game-end rules against known values,
+ * and the time taken measures their speed apart from any search.  A
+ * position in which the game is over has no moves, so it is counted
+ * only at the end of a sequence.
+ *
+ * @author Junyi Cao
+ */
+public class Perft {
+
+    /**
+     * Usage: java tablut.Perft [DEPTH [divide]].  Counts the positions
+     * DEPTH plies (default 4) or fewer from each of the reference
+     * POSITIONS, printing the counts, their expected values where
+     * known, and the positions counted per second, and exits with
+     * status 1 if any count differs from its expected value.  With
+     * "divide", also prints the count below each first move at DEPTH.
+     */
+    public static void main(String... args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        boolean divide = args.length > 1 && args[1].equals("divide");
+        boolean ok = true;
+        for (int p = 0; p < POSITIONS.length; p += 1) {
+            Board board = position(POSITIONS[p]);
+            System.out.printf("position %d: %s%n", p,
+                    String.join(" ", POSITIONS[p]));
+            for (int d = 1; d <= depth; d += 1) {
+                long start = System.nanoTime();
+                long nodes = count(board, d);
+                long nanos = System.nanoTime() - start;
+                String expected;
+                if (d > COUNTS[p].length) {
+                    expected = "";
+                } else if (COUNTS[p][d - 1] == nodes) {
+                    expected = "ok";
+                } else {
+                    expected = "expected " + COUNTS[p][d - 1];
+                    ok = false;
+                }
+                System.out.printf("  perft %d: %12d %12.0f nodes/sec  %s%n",
+                        d, nodes, nodes * 1e9 / Math.max(nanos, 1),
+                        expected);
+            }
+            if (divide) {
+                report(board, depth, true, System.out);
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Print to OUT the number of positions DEPTH plies from BOARD, the
+     * time taken to count them, and the rate of counting.  If DIVIDE,
+     * first print the count below each legal move from BOARD.  Leaves
+     * BOARD unchanged.
+     */
+    static void report(Board board, int depth, boolean divide,
+                       PrintStream out) {
+        long start = System.nanoTime();
+        long nodes;
+        if (divide) {
+            nodes = 0;
+            for (Map.Entry<Move, Long> entry
+                    : divide(board, depth).entrySet()) {
+                out.printf("%s: %d%n", entry.getKey(), entry.getValue());
+                nodes += entry.getValue();
+            }
+        } else {
+            nodes = count(board, depth);
+        }
+        long nanos = System.nanoTime() - start;
+        out.printf("perft %d: %d nodes in %.3f s (%.0f nodes/sec)%n",
+                depth, nodes, nanos * 1e-9,
+                nodes * 1e9 / Math.max(nanos, 1));
+    }
+
+    /**
+     * Return the number of positions at the end of the sequences of
+     * DEPTH legal moves from BOARD.  Leaves BOARD unchanged.
+     */
+    static long count(Board board, int depth) {
+        return count(board, depth, new int[(depth + 1) * MAX_MOVES], 0);
+    }
+
+    /**
+     * Return the number of positions at the end of the sequences of
+     * DEPTH legal moves from BOARD that start with each legal move,
+     * mapped from that move, in the order the moves are generated.
+     * Leaves BOARD unchanged.
+     */
+    static Map<Move, Long> divide(Board board, int depth) {
+        Map<Move, Long> result = new LinkedHashMap<>();
+        if (depth <= 0 || board.winner() != null) {
+            return result;
+        }
+        int[] moves = new int[(depth + 1) * MAX_MOVES];
+        int end = board.legalMoves(board.turn(), moves, 0);
+        for (int i = 0; i < end; i += 1) {
+            board.makeMove(moves[i]);
+            result.put(Move.mv(moves[i]),
+                    count(board, depth - 1, moves, MAX_MOVES));
+            board.undo();
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of positions at the end of the sequences of
+     * DEPTH legal moves from BOARD, using MOVES from index START on to
+     * hold the moves at each ply.
+     */
+    private static long count(Board board, int depth, int[] moves,
+                              int start) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (board.winner() != null) {
+            return 0;
+        }
+        int end = board.legalMoves(board.turn(), moves, start);
+        long nodes = 0;
+        for (int i = start; i < end; i += 1) {
+            board.makeMove(moves[i]);
+            nodes += count(board, depth - 1, moves, start + MAX_MOVES);
+            board.undo();
+        }
+        return nodes;
+    }
+
+    /**
+     * Return the position reached by MOVES from the initial position.
+     */
+    static Board position(String... moves) {
+        Board board = new Board();
+        for (String move : moves) {
+            board.makeMove(mv(move));
+        }
+        return board;
+    }
+
+    /**
+     * The reference positions, as the moves leading to them from the
+     * initial position.
+     */
+    static final String[][] POSITIONS = {
+        {},
+        {"f1-3", "e6-f", "d1-3", "e4-h", "i6-7"},
+        {"h5-3", "e6-g", "f9-7", "f5-3", "d9-7", "e5-6"},
+        {"d1-2", "e3-f", "e1-d", "e4-f", "d2-3", "c5-2", "e2-3", "f5-8",
+         "a6-c", "e5-f", "b5-c", "g5-6", "f1-2", "c2-3", "i6-7", "f5-7",
+         "i7-g", "f8-g", "h5-7", "g6-h", "c5-h", "g8-7", "f9-8", "e7-a"},
+    };
+
+    /**
+     * COUNTS[p][d - 1] is the number of positions d plies from
+     * POSITIONS[p].
+     */
+    static final long[][] COUNTS = {
+        {80, 4400, 353200, 19913864},
+        {50, 4448, 221489, 19878789},
+        {92, 4124, 376515, 17738548},
+        {92, 4126, 385390, 17474813},
+    };
+}
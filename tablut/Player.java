@@ -1,5 +1,8 @@
 package tablut;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 /**
  * A generic Tablut Player.
  *
@@ -51,6 +54,65 @@ abstract class Player {
      */
     abstract String myMove();
 
+    /**
+     * Start finding the result of myMove(), and return a future for it,
+     * so that my controller can go on reading commands while I think.
+     * By default, finds it in my controller's compute pool, if it has
+     * one, and otherwise at once, in the calling thread.
+     */
+    CompletableFuture<String> myMoveAsync() {
+        Executor pool = _controller.computePool();
+        if (pool == null) {
+            return CompletableFuture.completedFuture(myMove());
+        }
+        return CompletableFuture.supplyAsync(this::myMove, pool);
+    }
+
+    /**
+     * Abandon the move requested by the last call to myMoveAsync, if it
+     * is still being found, cancelling its future and stopping the work
+     * on it as soon as possible.  Return true iff the move was
+     * abandoned; otherwise, its future has completed or is completing
+     * normally.
+     */
+    boolean cancelMove() {
+        return false;
+    }
+
+    /**
+     * Notice that MOVE, by either side, has just been made on board().
+     * By default, does nothing.
+     */
+    void moveMade(Move move) {
+    }
+
+    /**
+     * Release the threads and memory I hold for finding moves, once the
+     * move I am finding, if any, has been found or abandoned.  My
+     * controller calls this when it replaces me or stops playing.  If
+     * I am asked for another move, I acquire them again.  By default,
+     * does nothing.
+     */
+    void close() {
+    }
+
+    /**
+     * Return a command that I, as a manual player, have received while
+     * another player was thinking, or null if there is none.  Does not
+     * wait.
+     */
+    String pollCommand() {
+        return null;
+    }
+
+    /**
+     * Return what I did to find my last move, or null if I have not
+     * found one or keep no record of it.
+     */
+    SearchStats stats() {
+        return null;
+    }
+
     /**
      * My Controller.
      */
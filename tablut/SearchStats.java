@@ -0,0 +1,266 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What a search for one move did.  Each Searcher counts its own nodes,
+ * evaluations, cutoffs and transposition-table probes in a SearchStats
+ * of its own, with plain increments, so that counting costs next to
+ * nothing and needs no synchronization; when the move has been found,
+ * the AI adds up the counts of all its threads in a fresh SearchStats
+ * and records there the move, how it was found, the depth reached,
+ * the value found, the principal variation and the time taken.
+ *
+ * @author Junyi Cao
+ */
+final class SearchStats {
+
+    /**
+     * How a move was found.
+     */
+    enum Source {
+        /**
+         * By an alpha-beta search.
+         */
+        SEARCH,
+        /**
+         * From the opening book.
+         */
+        BOOK,
+        /**
+         * From the endgame tablebase.
+         */
+        TABLEBASE
+    }
+
+    /**
+     * Set all my counts to zero.
+     */
+    void clear() {
+        _nodes = _evals = _cutoffs = _firstCutoffs = _probes = _hits = 0;
+    }
+
+    /**
+     * Add the counts in OTHER to mine.
+     */
+    void add(SearchStats other) {
+        _nodes += other._nodes;
+        _evals += other._evals;
+        _cutoffs += other._cutoffs;
+        _firstCutoffs += other._firstCutoffs;
+        _probes += other._probes;
+        _hits += other._hits;
+    }
+
+    /**
+     * Record that the search found MOVE by SOURCE in NANOS nanoseconds,
+     * completing an iteration to DEPTH plies (0 if it did not search)
+     * that gave the position SCORE, for the side to move, with
+     * principal variation PV, which starts with MOVE.
+     */
+    void finish(Move move, Source source, int depth, int score,
+                List<Move> pv, long nanos) {
+        _move = move;
+        _source = source;
+        _depth = depth;
+        _score = score;
+        _pv = new ArrayList<>(pv);
+        _nanos = nanos;
+    }
+
+    /**
+     * Return the number of positions visited.
+     */
+    long nodes() {
+        return _nodes;
+    }
+
+    /**
+     * Return the number of static evaluations, at the leaves of the
+     * search.
+     */
+    long evals() {
+        return _evals;
+    }
+
+    /**
+     * Return the number of beta cutoffs, outside quiescence search.
+     */
+    long cutoffs() {
+        return _cutoffs;
+    }
+
+    /**
+     * Return the number of beta cutoffs caused by the first move
+     * searched.
+     */
+    long firstCutoffs() {
+        return _firstCutoffs;
+    }
+
+    /**
+     * Return the number of transposition table lookups.
+     */
+    long probes() {
+        return _probes;
+    }
+
+    /**
+     * Return the number of transposition table lookups that found an
+     * entry for the position.
+     */
+    long hits() {
+        return _hits;
+    }
+
+    /**
+     * Return the fraction of cutoffs caused by the first move searched,
+     * a measure of move ordering, or 0 if there were none.
+     */
+    double firstCutoffRate() {
+        return _cutoffs == 0 ? 0 : (double) _firstCutoffs / _cutoffs;
+    }
+
+    /**
+     * Return the fraction of transposition table lookups that hit, or 0
+     * if there were none.
+     */
+    double hitRate() {
+        return _probes == 0 ? 0 : (double) _hits / _probes;
+    }
+
+    /**
+     * Return the move found, or null if finish has not been called.
+     */
+    Move move() {
+        return _move;
+    }
+
+    /**
+     * Return how the move was found.
+     */
+    Source source() {
+        return _source;
+    }
+
+    /**
+     * Return the depth of the deepest completed iteration.
+     */
+    int depth() {
+        return _depth;
+    }
+
+    /**
+     * Return the value of the position searched, for the side to move,
+     * found by the deepest completed iteration, or 0 if there was none.
+     */
+    int score() {
+        return _score;
+    }
+
+    /**
+     * Return the principal variation, starting with move().
+     */
+    List<Move> pv() {
+        return _pv;
+    }
+
+    /**
+     * Return the time taken, in nanoseconds.
+     */
+    long nanos() {
+        return _nanos;
+    }
+
+    /**
+     * Return the positions visited per second.
+     */
+    double nodesPerSecond() {
+        return _nanos == 0 ? 0 : _nodes * 1e9 / _nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s) depth %d, score %d, %d nodes in"
+                + " %.3f s (%.0f/s), %d evals, %d cutoffs (%.1f%% first),"
+                + " tt %d/%d (%.1f%%), pv %s",
+                _move, _source.toString().toLowerCase(), _depth, _score,
+                _nodes,
+                _nanos * 1e-9, nodesPerSecond(), _evals, _cutoffs,
+                100 * firstCutoffRate(), _hits, _probes, 100 * hitRate(),
+                joinMoves(" ", ""));
+    }
+
+    /**
+     * Return me as a JSON object on one line, for the move made by SIDE
+     * as ply PLY of its game.
+     */
+    String toJson(Piece side, int ply) {
+        return String.format(Locale.ROOT,
+                "{\"side\":\"%s\",\"ply\":%d,"
+                + "\"move\":\"%s\",\"source\":\"%s\",\"depth\":%d,"
+                + "\"score\":%d,\"nodes\":%d,\"evals\":%d,\"cutoffs\":%d,"
+                + "\"firstMoveCutoffs\":%d,\"firstMoveCutoffRate\":%.4f,"
+                + "\"ttProbes\":%d,\"ttHits\":%d,\"ttHitRate\":%.4f,"
+                + "\"pv\":[%s],\"nanos\":%d,\"nodesPerSecond\":%.0f}",
+                side.toName().toLowerCase(), ply, _move,
+                _source.toString().toLowerCase(), _depth, _score, _nodes,
+                _evals,
+                _cutoffs, _firstCutoffs, firstCutoffRate(), _probes, _hits,
+                hitRate(), joinMoves(",", "\""), _nanos, nodesPerSecond());
+    }
+
+    /**
+     * Return the moves of my principal variation, each between QUOTEs,
+     * separated by SEPARATOR.
+     */
+    private String joinMoves(String separator, String quote) {
+        StringBuilder result = new StringBuilder();
+        for (Move move : _pv) {
+            if (result.length() > 0) {
+                result.append(separator);
+            }
+            result.append(quote).append(move).append(quote);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Counts kept by a Searcher as it goes: positions visited, static
+     * evaluations, beta cutoffs and those caused by the first move,
+     * transposition table lookups and those that hit.
+     */
+    long _nodes, _evals, _cutoffs, _firstCutoffs, _probes, _hits;
+
+    /**
+     * The move found.
+     */
+    private Move _move;
+
+    /**
+     * How _move was found.
+     */
+    private Source _source = Source.SEARCH;
+
+    /**
+     * Depth of the deepest completed iteration.
+     */
+    private int _depth;
+
+    /**
+     * Value found by that iteration.
+     */
+    private int _score;
+
+    /**
+     * The principal variation.
+     */
+    private List<Move> _pv = new ArrayList<>();
+
+    /**
+     * Time taken, in nanoseconds.
+     */
+    private long _nanos;
+}
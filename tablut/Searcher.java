@@ -0,0 +1,544 @@
+package tablut;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static tablut.AI.*;
+import static tablut.Board.MAX_MOVES;
+import static tablut.Board.THRONE;
+import static tablut.Move.mv;
+import static tablut.Move.transform;
+import static tablut.Piece.*;
+import static tablut.Square.INVERSE_SYMMETRIES;
+import static tablut.Square.ROOK_INDICES;
+import static tablut.TranspositionTable.*;
+import static tablut.Utils.*;
+
+/**
+ * One thread's alpha-beta search for an AI.  A Searcher owns its board,
+ * move buffer and move-ordering tables, so several can search the same
+ * position at once while sharing a transposition table (lazy SMP):
+ * whatever one of them learns about a position is then available to the
+ * others through the table.
+ *
+ * @author Junyi Cao
+ */
+final class Searcher {
+
+    /**
+     * A Searcher that records its results in TABLE and gives up its
+     * search whenever STOP becomes true.
+     */
+    Searcher(TranspositionTable table, AtomicBoolean stop) {
+        _table = table;
+        _stop = stop;
+    }
+
+    /**
+     * Search BOARD, on which SENSE (1 for white, -1 for black) is to
+     * move, by iterative deepening: one full search at each depth
+     * FIRSTDEPTH, FIRSTDEPTH + 1, ..., up to MAXDEPTH.  If LIMIT > 0,
+     * stop after LIMIT milliseconds (setting the stop flag for any other
+     * Searchers), but only once an iteration has completed.  Return the
+     * value, for SENSE, found by the deepest search that completed; its
+     * move is then bestMove().  BOARD is modified during the search, but
+     * restored at the end.
+     */
+    int search(Board board, int sense, int firstDepth, int maxDepth,
+               int limit) {
+        if (_moves.length < (maxDepth + 1) * MAX_MOVES) {
+            _moves = new int[(maxDepth + 1) * MAX_MOVES];
+        }
+        _deadline = System.nanoTime() + limit * 1_000_000L;
+        _limited = limit > 0;
+        _cancelled = null;
+        _stopped = false;
+        _stats.clear();
+        _depth = 0;
+        _bestMove = null;
+        _orderer.newSearch();
+        int value = 0, bestValue = 0;
+        for (int depth = firstDepth; depth <= maxDepth; depth += 1) {
+            _rootDepth = depth;
+            _timed = _limited && _bestMove != null;
+            value = aspirationSearch(board, depth, sense, value);
+            if (_stopped) {
+                break;
+            }
+            _bestMove = _lastFoundMove;
+            _depth = depth;
+            bestValue = value;
+            if (isWin(value)) {
+                break;
+            }
+        }
+        return bestValue;
+    }
+
+    /**
+     * Search the subtree below BOARD, a node PLY plies from the root of a
+     * larger search, to DEPTH plies, with SENSE to move and window
+     * ALPHA .. BETA, as for findMove.  Used by other engines to hand
+     * off small subtrees.  The search is abandoned if the shared stop
+     * flag is set or CANCELLED becomes true, in which case stopped()
+     * is true and the value returned is meaningless.  Adds what it did
+     * to stats().
+     */
+    int searchNode(Board board, int depth, int ply, int sense,
+                   int alpha, int beta, BooleanSupplier cancelled) {
+        if (_moves.length < (depth + 1) * MAX_MOVES) {
+            _moves = new int[(depth + 1) * MAX_MOVES];
+        }
+        _rootDepth = ply + depth;
+        _limited = _timed = false;
+        _cancelled = cancelled;
+        _stopped = false;
+        return findMove(board, depth, false, sense, alpha, beta);
+    }
+
+    /**
+     * Return true iff the last search was abandoned.
+     */
+    boolean stopped() {
+        return _stopped;
+    }
+
+    /**
+     * Return my move orderer.
+     */
+    MoveOrderer orderer() {
+        return _orderer;
+    }
+
+    /**
+     * Clear my statistics.
+     */
+    void clearStats() {
+        _stats.clear();
+    }
+
+    /**
+     * Return the move found by the last call to search, or null if no
+     * iteration completed.
+     */
+    Move bestMove() {
+        return _bestMove;
+    }
+
+    /**
+     * Return the counts of what the last call to search did, or the
+     * calls to searchNode since clearStats.  Only the counts are set.
+     * The result is mine, and changes as I search.
+     */
+    SearchStats stats() {
+        return _stats;
+    }
+
+    /**
+     * Return the depth of the deepest iteration completed by the last
+     * call to search, or 0 if none was.
+     */
+    int completedDepth() {
+        return _depth;
+    }
+
+    /**
+     * Search BOARD, on which SENSE is to move, to DEPTH plies, first
+     * with a narrow window around GUESS, the value found by the previous
+     * iteration, widening the window on the side where the search
+     * fails.  Return the value found, for SENSE, and record the best
+     * move in _lastFoundMove.
+     */
+    private int aspirationSearch(Board board, int depth, int sense,
+                                 int guess) {
+        int alpha = -INFTY, beta = INFTY;
+        if (depth > 1 && !isWin(guess)) {
+            alpha = guess - ASPIRATION_WINDOW;
+            beta = guess + ASPIRATION_WINDOW;
+        }
+        while (true) {
+            _lastFoundMove = null;
+            int value = findMove(board, depth, true, sense, alpha, beta);
+            if (_stopped) {
+                return value;
+            } else if (value <= alpha) {
+                alpha = -INFTY;
+            } else if (value >= beta) {
+                beta = INFTY;
+            } else {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Return true iff VALUE is the score of a won or lost position
+     * found by the search, rather than a static estimate.
+     */
+    static boolean isWin(int value) {
+        return Math.abs(value) >= WIN_THRESHOLD;
+    }
+
+    /**
+     * Return true iff the current iteration must be abandoned, in which
+     * case it is marked as stopped: the shared stop flag is set, the
+     * search is timed and has passed its deadline, or the caller of
+     * searchNode has cancelled it.  Only reads the clock on every
+     * CLOCK_INTERVAL'th call.
+     */
+    private boolean timeUp() {
+        if (_stopped) {
+            return true;
+        }
+        if (_timed) {
+            _clockCount += 1;
+            if (_clockCount % CLOCK_INTERVAL == 0
+                    && System.nanoTime() - _deadline > 0) {
+                _stop.set(true);
+            }
+        }
+        if (_stop.get() && (_bestMove != null || !_limited)
+                || _cancelled != null && _cancelled.getAsBoolean()) {
+            _stopped = true;
+        }
+        return _stopped;
+    }
+
+    /**
+     * Find a move from position BOARD, on which SENSE (1 for white, -1
+     * for black) is to move, and return its value for SENSE, recording
+     * the move found in _lastFoundMove iff SAVEMOVE.  The value is exact
+     * if it lies strictly between ALPHA and BETA; otherwise it is an
+     * upper bound (if <= ALPHA) or lower bound (if >= BETA) on the true
+     * value.  Searches up to DEPTH levels.  At level 0 only tactical
+     * moves are searched (see quiesce), and _lastFoundMove is not set.
+     * The first move at each node is searched with the full window and
+     * the rest with a null window, re-searching only those that turn
+     * out to be better (principal variation search).
+     * Results are looked up in and recorded in _table under the
+     * canonical key of the position, with moves mapped by the canonical
+     * symmetry, so that symmetric positions share entries.  Returns a
+     * meaningless value, without recording it, if the search is stopped
+     * by timeUp.
+     */
+    private int findMove(Board board, int depth, boolean saveMove,
+                         int sense, int alpha, int beta) {
+        int ply = _rootDepth - depth;
+        if (depth == 0) {
+            return quiesce(board, ply, 0, sense, alpha, beta);
+        }
+        _stats._nodes += 1;
+        if (board.winner() != null) {
+            int value = WINNING_VALUE - ply;
+            return board.winner() == WHITE ? sense * value : -sense * value;
+        } else if (timeUp()) {
+            return 0;
+        }
+        if (sense != 1 && sense != -1) {
+            throw error("Sense: %d which isn't 1 or -1.", sense);
+        }
+        int symmetry = board.canonicalSymmetry();
+        long key = board.key(symmetry);
+        long entry = _table.probe(key);
+        _stats._probes += 1;
+        if (entry != MISS) {
+            _stats._hits += 1;
+        }
+        if (entry != MISS && !saveMove && depth(entry) >= depth) {
+            int score = fromTable(score(entry), ply);
+            if (bound(entry) == EXACT
+                    || bound(entry) == LOWER && score >= beta
+                    || bound(entry) == UPPER && score <= alpha) {
+                return score;
+            }
+        }
+
+        int alpha0 = alpha, best = 0, bestValue = -INFTY;
+        int start = depth * MAX_MOVES;
+        int end = board.legalMoves(sense == 1 ? WHITE : BLACK,
+                _moves, start);
+        _orderer.order(board, _moves, start, end, entry == MISS ? 0
+                : transform(move(entry), INVERSE_SYMMETRIES[symmetry]), ply);
+        for (int i = start; i < end; i++) {
+            int move = _moves[i];
+            board.makeMove(move);
+            int value;
+            if (i == start) {
+                value = -findMove(board, depth - 1, false, -sense,
+                        -beta, -alpha);
+            } else {
+                value = -findMove(board, depth - 1, false, -sense,
+                        -alpha - 1, -alpha);
+                if (value > alpha && value < beta && !_stopped) {
+                    value = -findMove(board, depth - 1, false, -sense,
+                            -beta, -alpha);
+                }
+            }
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (value > bestValue) {
+                bestValue = value;
+                best = move;
+                if (saveMove) {
+                    _lastFoundMove = mv(move);
+                }
+            }
+            if (value > alpha) {
+                alpha = value;
+            }
+            if (alpha >= beta) {
+                _stats._cutoffs += 1;
+                if (i == start) {
+                    _stats._firstCutoffs += 1;
+                }
+                _orderer.cutoff(board, move, ply, depth);
+                break;
+            }
+        }
+        int bound = bestValue <= alpha0 ? UPPER
+                : bestValue >= beta ? LOWER : EXACT;
+        _table.store(key, depth, bound, toTable(bestValue, ply),
+                transform(best, symmetry));
+        return bestValue;
+    }
+
+    /**
+     * Return the value, for SENSE, who is to move on BOARD, of the
+     * position PLY plies from the root and QPLY plies past the horizon,
+     * searching only tactical moves until the position is quiet: king
+     * escapes, moves that complete a king capture, and other captures.
+     * The first two end the game, so they are checked for first, by
+     * looking along the lines through the king, and return a win at
+     * once.  Otherwise SENSE may stand pat on the static
+     * score, and captures that could not raise it to ALPHA even with
+     * DELTA_MARGIN to spare are skipped.  The value is bounded by
+     * ALPHA and BETA as for findMove.
+     */
+    private int quiesce(Board board, int ply, int qply, int sense,
+                        int alpha, int beta) {
+        _stats._nodes += 1;
+        if (board.winner() != null) {
+            int value = WINNING_VALUE - ply;
+            return board.winner() == WHITE ? sense * value : -sense * value;
+        } else if (timeUp()) {
+            return 0;
+        }
+
+        int king = board.kingPosition().index();
+        for (int d = 0; d < 4; d += 1) {
+            int[] ray = ROOK_INDICES[king][d];
+            if (sense == 1) {
+                if (isOpen(board, ray)) {
+                    return WINNING_VALUE - ply - 1;
+                }
+            } else if (ray.length > 0 && board.get(ray[0]) == EMPTY
+                    && ray[0] != THRONE.index()
+                    && capturesKing(board, ray[0])) {
+                return WINNING_VALUE - ply - 1;
+            }
+        }
+
+        _stats._evals += 1;
+        int standPat = Math.max(-MAX_HEURISTIC_VALUE,
+                Math.min(MAX_HEURISTIC_VALUE, sense * staticScore(board)));
+        if (standPat >= beta || qply == MAX_QUIESCENCE_PLY) {
+            return standPat;
+        }
+        alpha = Math.max(alpha, standPat);
+        boolean delta = standPat > -WILL_WIN_VALUE / 2;
+        int bestValue = standPat;
+        int start = qply * MAX_MOVES;
+        int end = board.legalMoves(sense == 1 ? WHITE : BLACK,
+                _quietMoves, start);
+        for (int i = start; i < end; i += 1) {
+            int move = _quietMoves[i];
+            int count = MoveOrderer.captures(board, move);
+            if (count == 0
+                    || delta && standPat + count + DELTA_MARGIN <= alpha) {
+                continue;
+            }
+            board.makeMove(move);
+            int value = -quiesce(board, ply + 1, qply + 1, -sense,
+                    -beta, -alpha);
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (value > bestValue) {
+                bestValue = value;
+            }
+            if (value > alpha) {
+                alpha = value;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return bestValue;
+    }
+
+    /**
+     * Return true iff all the squares whose indices are in RAY are empty
+     * on BOARD.
+     */
+    private static boolean isOpen(Board board, int[] ray) {
+        for (int s : ray) {
+            if (board.get(s) != EMPTY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true iff black, to move on BOARD, captures the king by
+     * moving a piece to the empty square with index TARGET.
+     */
+    private static boolean capturesKing(Board board, int target) {
+        for (int d = 0; d < 4; d += 1) {
+            for (int s : ROOK_INDICES[target][d]) {
+                if (board.get(s) == EMPTY) {
+                    continue;
+                } else if (board.get(s) == BLACK) {
+                    board.makeMove(s << 7 | target);
+                    boolean won = board.winner() == BLACK;
+                    board.undo();
+                    if (won) {
+                        return true;
+                    }
+                }
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return VALUE, found PLY plies from the root, in the form stored in
+     * _table: win scores are made relative to the node rather than the
+     * root, so that they stay correct when reached along other paths.
+     */
+    static int toTable(int value, int ply) {
+        if (!isWin(value)) {
+            return value;
+        }
+        return value > 0 ? value + ply : value - ply;
+    }
+
+    /**
+     * Return the value, for a node PLY plies from the root, of the
+     * VALUE stored in _table (the inverse of toTable).
+     */
+    static int fromTable(int value, int ply) {
+        if (!isWin(value)) {
+            return value;
+        }
+        return value > 0 ? value - ply : value + ply;
+    }
+
+    /**
+     * Number of calls to timeUp between readings of the clock.
+     */
+    private static final int CLOCK_INTERVAL = 1024;
+
+    /**
+     * Deepest quiescence search, in plies past the horizon.
+     */
+    private static final int MAX_QUIESCENCE_PLY = 8;
+
+    /**
+     * The most by which the static score, apart from the material that
+     * changes hands, is taken to change with a capture, for delta
+     * pruning.
+     */
+    private static final int DELTA_MARGIN = 20;
+
+    /**
+     * Results of searches, shared with the other Searchers of my AI.
+     */
+    private final TranspositionTable _table;
+
+    /**
+     * Set when all Searchers of my AI are to stop.
+     */
+    private final AtomicBoolean _stop;
+
+    /**
+     * Orders the moves at each node of my searches.
+     */
+    private final MoveOrderer _orderer = new MoveOrderer(MAX_SEARCH_DEPTH);
+
+    /**
+     * The move buffer for the search: the moves generated at a node
+     * DEPTH plies above the horizon occupy the MAX_MOVES entries starting
+     * at DEPTH * MAX_MOVES, so no level overwrites another's moves.
+     */
+    private int[] _moves = new int[0];
+
+    /**
+     * The move buffer for quiescence searches: the moves generated QPLY
+     * plies past the horizon start at QPLY * MAX_MOVES.
+     */
+    private final int[] _quietMoves =
+            new int[(MAX_QUIESCENCE_PLY + 1) * MAX_MOVES];
+
+    /**
+     * Polled to see if the subtree being searched by searchNode is no
+     * longer needed, or null.
+     */
+    private BooleanSupplier _cancelled;
+
+    /**
+     * The System.nanoTime() value at which a timed search stops.
+     */
+    private long _deadline;
+
+    /**
+     * True iff the current search has a time limit.
+     */
+    private boolean _limited;
+
+    /**
+     * True iff the current iteration may be stopped by the time limit.
+     * The first iteration of each search always runs to completion.
+     */
+    private boolean _timed;
+
+    /**
+     * True iff the current iteration has been stopped, in which case its
+     * results are meaningless.
+     */
+    private boolean _stopped;
+
+    /**
+     * Number of calls to timeUp.
+     */
+    private int _clockCount;
+
+    /**
+     * What the current search has done.
+     */
+    private final SearchStats _stats = new SearchStats();
+
+    /**
+     * The depth of the deepest iteration the current search completed.
+     */
+    private int _depth;
+
+    /**
+     * The depth of the current iteration of the search.
+     */
+    private int _rootDepth;
+
+    /**
+     * The move found by the current iteration, so far.
+     */
+    private Move _lastFoundMove;
+
+    /**
+     * The move found by the deepest completed iteration.
+     */
+    private Move _bestMove;
+}
@@ -0,0 +1,143 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A server of many independent games of Tablut at once, for programs
+ * that connect to it through a socket on the local host.  Each
+ * connection is a session with a Controller and Board of its own, which
+ * takes the commands of the text interface, one per line, from the
+ * connection and writes back, one per line, everything the text
+ * interface would print (errors included), without prompts.  A session
+ * ends with "quit" or when the client closes its end.
+ *
+ * Each session has a thread of its own, which spends its time waiting
+ * for input or for its automated players' moves.  Those players do
+ * their searching, single-threaded (with the SMP engine, which then
+ * needs no threads of its own), in a pool of a fixed number of
+ * threads shared by all sessions, so that however many games are being
+ * played, the searches neither start more threads than the machine can
+ * run nor leave the sessions' input and output waiting for a processor.
+ * Likewise, the alpha-beta players of all sessions share one
+ * transposition table, and Monte Carlo players are limited to a tree
+ * of SESSION_TREE_NODES nodes, so that a session's automated players
+ * take well under a megabyte between them.
+ *
+ * @author Junyi Cao
+ */
+final class Server {
+
+    /**
+     * Nodes in each tree of a Monte Carlo player.
+     */
+    static final int SESSION_TREE_NODES = 1 << 13;
+
+    /**
+     * A server that listens on PORT of the local host, giving each game
+     * automated players made from AUTOPLAYERTEMPLATE ("auto C"), which
+     * all share one transposition table of its size, and single-threaded
+     * Monte Carlo players ("auto C mcts"), all of which search in a pool
+     * of COMPUTETHREADS threads.
+     */
+    Server(int port, AI autoPlayerTemplate, int computeThreads) {
+        _port = port;
+        autoPlayerTemplate.shareTable();
+        _autoPlayerTemplate = autoPlayerTemplate;
+        _mctsPlayerTemplate = new MonteCarloAI(1, SESSION_TREE_NODES);
+        _compute = Executors.newFixedThreadPool(Math.max(1, computeThreads),
+                r -> {
+                    Thread t = new Thread(r, "tablut-compute");
+                    t.setDaemon(true);
+                    return t;
+                });
+        _sessions = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "tablut-session");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Listen on my port of the local host, announcing it on the standard
+     * output, and serve the connections made to it until an error occurs
+     * on the listening socket.
+     */
+    void serve() throws IOException {
+        try (ServerSocket listener = new ServerSocket(_port, BACKLOG,
+                InetAddress.getLoopbackAddress())) {
+            System.out.printf("Tablut server listening on port %d%n",
+                    listener.getLocalPort());
+            serve(listener);
+        }
+    }
+
+    /**
+     * Accept connections on LISTENER, starting a session for each, until
+     * an error occurs on it (as when it is closed).
+     */
+    void serve(ServerSocket listener) throws IOException {
+        while (true) {
+            Socket client = listener.accept();
+            _sessions.execute(() -> session(client));
+        }
+    }
+
+    /**
+     * Play games with CLIENT until it quits or disconnects, then close
+     * the connection.
+     */
+    private void session(Socket client) {
+        try (client) {
+            client.setTcpNoDelay(true);
+            PrintStream output = new PrintStream(
+                    new BufferedOutputStream(client.getOutputStream()),
+                    true);
+            Controller controller =
+                    new Controller(new NullView(), null,
+                            new TextReporter(output, output),
+                            new TextPlayer(), _autoPlayerTemplate, false,
+                            client.getInputStream(), output);
+            controller.setMctsPlayerTemplate(_mctsPlayerTemplate);
+            controller.setComputePool(_compute);
+            controller.setPrompt(false);
+            controller.play();
+            output.flush();
+        } catch (IOException | RuntimeException excp) {
+            System.err.printf("Session with %s ended: %s%n",
+                    client.getRemoteSocketAddress(), excp);
+        }
+    }
+
+    /**
+     * Number of connections the listening socket queues before they are
+     * accepted.
+     */
+    private static final int BACKLOG = 1024;
+
+    /**
+     * The port I listen on.
+     */
+    private final int _port;
+
+    /**
+     * The templates for automated players in every session.
+     */
+    private final Player _autoPlayerTemplate, _mctsPlayerTemplate;
+
+    /**
+     * The pool in which all automated players search.
+     */
+    private final ExecutorService _compute;
+
+    /**
+     * Runs the sessions, one thread each.
+     */
+    private final ExecutorService _sessions;
+}
@@ -0,0 +1,164 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static tablut.Move.mv;
+
+public class ServerTest {
+
+    @Test
+    public void testConcurrentSessions() throws Exception {
+        Server server = new Server(0, new AI(1, 1, AI.Engine.SMP), 2);
+        try (ServerSocket listener = new ServerSocket(0, 10,
+                InetAddress.getLoopbackAddress())) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    server.serve(listener);
+                } catch (IOException excp) {
+                    /* Closed at the end of the test. */
+                }
+            });
+            int port = listener.getLocalPort();
+            CompletableFuture<String> auto = CompletableFuture.supplyAsync(
+                    () -> session(port, "new\nmanual white\nauto black\n"
+                            + "dump\nquit\n"));
+            CompletableFuture<String> manual = CompletableFuture.supplyAsync(
+                    () -> session(port, "new\nmanual white\nd1-3\nbogus\n"
+                            + "dump\nquit\n"));
+
+            String[] lines = auto.get(30, TimeUnit.SECONDS).split("\n", 2);
+            assertTrue(lines[0].startsWith("* "));
+            Move move = mv(lines[0].substring(2));
+            Board board = new Board();
+            assertTrue(board.isLegal(move));
+            board.makeMove(move);
+            assertEquals(dump(board), lines[1]);
+
+            board = new Board();
+            board.makeMove(mv("d1-3"));
+            assertEquals("Error: Bad command: bogus\n\n" + dump(board),
+                    manual.get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testMemoryPerSession() throws Exception {
+        Server server = new Server(0,
+                new AI(TranspositionTable.DEFAULT_MEGABYTES, 1,
+                        AI.Engine.SMP), 2);
+        try (ServerSocket listener = new ServerSocket(0, SESSIONS,
+                InetAddress.getLoopbackAddress())) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    server.serve(listener);
+                } catch (IOException excp) {
+                    /* Closed at the end of the test. */
+                }
+            });
+            int port = listener.getLocalPort();
+            session(port, "time 50\nmanual white\nauto black\nquit\n");
+            session(port,
+                    "time 50\nmanual white\nauto black mcts\nquit\n");
+            long before = usedHeap();
+            List<Socket> sessions = new ArrayList<>();
+            try {
+                for (int i = 0; i < SESSIONS; i += 1) {
+                    sessions.add(openSession(port,
+                            i % 2 == 0 ? "auto black" : "auto black mcts"));
+                }
+                long perSession = (usedHeap() - before) / SESSIONS;
+                System.out.printf("Heap per session: %d KB%n",
+                        perSession >> 10);
+                assertTrue(perSession < MAX_SESSION_BYTES);
+            } finally {
+                for (Socket socket : sessions) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of sessions kept open by testMemoryPerSession.
+     */
+    private static final int SESSIONS = 40;
+
+    /**
+     * Most heap a session whose automated player has made a move may
+     * take: less than one player's table, or tree, of its own.
+     */
+    private static final long MAX_SESSION_BYTES = 1 << 20;
+
+    /**
+     * Return a connection to the server on PORT in which black, played
+     * by the automated player that COMMAND selects, has made its first
+     * move, which the session is left waiting for white to answer.
+     */
+    private static Socket openSession(int port, String command)
+        throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setSoTimeout(30000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("time 50\nmanual white\n" + command + "\n").getBytes());
+        out.flush();
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream()));
+        String line = in.readLine();
+        assertTrue(line != null && line.startsWith("* "));
+        return socket;
+    }
+
+    /**
+     * Return the number of bytes of heap in use after collecting
+     * garbage.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i += 1) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Return what the server on PORT writes back, with line ends made
+     * "\n", when sent COMMANDS.
+     */
+    private static String session(int port, String commands) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                port)) {
+            socket.setSoTimeout(30000);
+            OutputStream out = socket.getOutputStream();
+            out.write(commands.getBytes());
+            out.flush();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            in.transferTo(result);
+            return result.toString().replace("\r\n", "\n");
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /**
+     * Return the output of "dump" for BOARD, with line ends made "\n".
+     */
+    private static String dump(Board board) {
+        return String.format("===%n%s===%n", board).replace("\r\n", "\n");
+    }
+}
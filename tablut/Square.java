@@ -116,15 +116,11 @@ final class Square {
 
     /**
      * For capture utilities. Return the 3 squares possible to be captured
-     * due to this move.
+     * due to this move.  The result is shared and must not be modified.
      * @param direction The direction in integer.
      */
     Square[] triSquares(int direction) {
-        Square[] squares = new Square[3];
-        squares[0] = rookMove(direction, 2);
-        squares[1] = rookMove((direction + 1) % 4, 2);
-        squares[2] = rookMove(direction == 0 ? 3 : direction - 1, 2);
-        return squares;
+        return TRI_SQUARES[_index][direction];
     }
 
     /**
@@ -287,6 +283,12 @@ final class Square {
      */
     static final SqList[][] ROOK_SQUARES = new SqList[SQUARES.length][4];
 
+    /**
+     * ROOK_INDICES[i][d] holds the indices of the squares in
+     * ROOK_SQUARES[i][d], in the same order.
+     */
+    static final int[][][] ROOK_INDICES = new int[SQUARES.length][4][];
+
     static {
         for (Square sq : SQUARES) {
             int r0 = sq.row(), c0 = sq.col(), i0 = sq.index();
@@ -299,6 +301,78 @@ final class Square {
                     }
                     L.add(sq(c1, r1));
                 }
+                int[] indices = ROOK_INDICES[i0][d] = new int[L.size()];
+                for (int k = 0; k < indices.length; k += 1) {
+                    indices[k] = L.get(k).index();
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of symmetries of the board (rotations and reflections).
+     */
+    static final int NUM_SYMMETRIES = 8;
+
+    /**
+     * SYMMETRIES[s][i] is the index of the image of the square with index
+     * i under symmetry s of the board.  Symmetry s transposes the board
+     * if bit 2 of s is set, then mirrors the columns if bit 0 is set and
+     * the rows if bit 1 is set.  SYMMETRIES[0] is the identity.
+     */
+    static final int[][] SYMMETRIES = new int[NUM_SYMMETRIES][NUM_SQUARES];
+
+    /**
+     * INVERSE_SYMMETRIES[s] is the symmetry that undoes symmetry s.
+     */
+    static final int[] INVERSE_SYMMETRIES = new int[NUM_SYMMETRIES];
+
+    static {
+        int last = BOARD_SIZE - 1;
+        for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+            for (Square sq : SQUARES) {
+                int c = sq.col(), r = sq.row();
+                if ((s & 4) != 0) {
+                    c = sq.row();
+                    r = sq.col();
+                }
+                if ((s & 1) != 0) {
+                    c = last - c;
+                }
+                if ((s & 2) != 0) {
+                    r = last - r;
+                }
+                SYMMETRIES[s][sq.index()] = sq(c, r).index();
+            }
+        }
+        for (int s = 0; s < NUM_SYMMETRIES; s += 1) {
+            for (int t = 0; t < NUM_SYMMETRIES; t += 1) {
+                boolean inverse = true;
+                for (int i = 0; i < NUM_SQUARES; i += 1) {
+                    inverse &= SYMMETRIES[t][SYMMETRIES[s][i]] == i;
+                }
+                if (inverse) {
+                    INVERSE_SYMMETRIES[s] = t;
+                }
+            }
+        }
+    }
+
+    /**
+     * TRI_SQUARES[i][d] is the value of triSquares(d) for the square with
+     * index i: the squares two away from it in direction d and in the
+     * two directions perpendicular to d, or null where there are none.
+     */
+    private static final Square[][][] TRI_SQUARES =
+            new Square[SQUARES.length][4][];
+
+    static {
+        for (Square sq : SQUARES) {
+            for (int d = 0; d < DIR.length; d += 1) {
+                TRI_SQUARES[sq.index()][d] = new Square[]{
+                        sq.rookMove(d, 2),
+                        sq.rookMove((d + 1) % 4, 2),
+                        sq.rookMove(d == 0 ? 3 : d - 1, 2)};
             }
         }
     }
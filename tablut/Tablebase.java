@@ -0,0 +1,435 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static tablut.Board.MAX_MOVES;
+import static tablut.Board.THRONE;
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.NUM_SYMMETRIES;
+import static tablut.Square.SYMMETRIES;
+import static tablut.Square.sq;
+
+/**
+ * Exact values of positions with few pieces, as computed by
+ * TablebaseGenerator and memory-mapped from a file.  A position is
+ * covered if the king stands off the edge and there are at most
+ * maxWhites() other white pieces and maxBlacks() black pieces.  Each
+ * covered position has a one-byte value, from the point of view of the
+ * side to move: DRAW if neither side can force a win, an odd number D
+ * if the side to move wins in D plies with best play, and an even
+ * number D + 2 if it loses in D plies.  Repetitions and move limits
+ * are ignored.
+ *
+ * The file holds a header (MAGIC, maxWhites() and maxBlacks() as ints)
+ * followed by one section for each number of whites W <= maxWhites()
+ * and blacks B <= maxBlacks(), ordered by W and then B.  A section lists
+ * the values of its positions by index (see index).  Since the
+ * symmetries of the board do not change values, sections hold only the
+ * positions whose king is in KING_REGION, one eighth of the board; other
+ * positions are looked up by their images.
+ *
+ * @author Junyi Cao
+ */
+final class Tablebase {
+
+    /**
+     * The value of a drawn position.
+     */
+    static final int DRAW = 0;
+
+    /**
+     * The result of probing a position that is not covered.
+     */
+    static final int UNKNOWN = -1;
+
+    /**
+     * First int of a tablebase file.
+     */
+    static final int MAGIC = 0x54424C54;
+
+    /**
+     * Bytes in the header of a tablebase file.
+     */
+    static final int HEADER_BYTES = 12;
+
+    /**
+     * The number of squares off the edge, where the king of a covered
+     * position may stand.
+     */
+    static final int INTERIOR_SQUARES = (Board.SIZE - 2) * (Board.SIZE - 2);
+
+    /**
+     * KING_REGION[k] is the index of the k-th square off the edge in the
+     * triangle between the throne, the middle of the top row and the
+     * upper-right corner.  Every square off the edge has an image in it.
+     */
+    static final int[] KING_REGION;
+
+    /**
+     * INTERIOR_SLOT[i] is the number of the square with index i among
+     * the squares off the edge, in index order, or -1 if it is on the
+     * edge.  REGION_SLOT[i] is its number in KING_REGION, or -1 if it
+     * is not there.
+     */
+    static final int[] INTERIOR_SLOT = new int[NUM_SQUARES],
+            REGION_SLOT = new int[NUM_SQUARES];
+
+    /**
+     * KING_SYMMETRY[i] is the first symmetry (see Square.SYMMETRIES)
+     * taking the square with index i into KING_REGION.
+     */
+    private static final int[] KING_SYMMETRY = new int[NUM_SQUARES];
+
+    /**
+     * The largest number of pieces of one color that can be indexed.
+     */
+    static final int MAX_PIECES = 8;
+
+    /**
+     * BINOMIAL[n][k] is n choose k.
+     */
+    private static final long[][] BINOMIAL =
+            new long[NUM_SQUARES + 1][MAX_PIECES + 1];
+
+    static {
+        int region = 0, interior = 0;
+        int[] squares = new int[NUM_SQUARES];
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Square s = sq(i);
+            INTERIOR_SLOT[i] = REGION_SLOT[i] = -1;
+            if (!s.isEdge()) {
+                INTERIOR_SLOT[i] = interior++;
+                if (s.col() >= THRONE.col() && s.row() >= s.col()) {
+                    REGION_SLOT[i] = region;
+                    squares[region++] = i;
+                }
+            }
+        }
+        KING_REGION = Arrays.copyOf(squares, region);
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int s = NUM_SYMMETRIES - 1; s >= 0; s -= 1) {
+                if (REGION_SLOT[SYMMETRIES[s][i]] >= 0) {
+                    KING_SYMMETRY[i] = s;
+                }
+            }
+        }
+        for (int n = 0; n <= NUM_SQUARES; n += 1) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= MAX_PIECES && k <= n; k += 1) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1]
+                        + (k < n ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+    }
+
+    /**
+     * A tablebase whose sections are SECTIONS, covering up to MAXWHITES
+     * whites and MAXBLACKS blacks.
+     */
+    private Tablebase(ByteBuffer[] sections, int maxWhites, int maxBlacks) {
+        _sections = sections;
+        _maxWhites = maxWhites;
+        _maxBlacks = maxBlacks;
+    }
+
+    /**
+     * Return the tablebase in the file named FILENAME, which is mapped
+     * into memory rather than read.
+     */
+    static Tablebase load(String fileName) throws IOException {
+        try (FileChannel file = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = file.map(FileChannel.MapMode.READ_ONLY,
+                    0, HEADER_BYTES);
+            int magic = header.getInt(0), maxWhites = header.getInt(4),
+                    maxBlacks = header.getInt(8);
+            if (magic != MAGIC || maxWhites < 0 || maxBlacks < 0
+                    || maxWhites > MAX_PIECES || maxBlacks > MAX_PIECES) {
+                throw new IOException("not a tablebase: " + fileName);
+            }
+            ByteBuffer[] sections =
+                    new ByteBuffer[(maxWhites + 1) * (maxBlacks + 1)];
+            long offset = HEADER_BYTES;
+            for (int w = 0; w <= maxWhites; w += 1) {
+                for (int b = 0; b <= maxBlacks; b += 1) {
+                    long size = sectionSize(w, b);
+                    if (offset + size > file.size()) {
+                        throw new IOException("truncated tablebase: "
+                                + fileName);
+                    }
+                    MappedByteBuffer section = file.map(
+                            FileChannel.MapMode.READ_ONLY, offset, size);
+                    sections[w * (maxBlacks + 1) + b] = section;
+                    offset += size;
+                }
+            }
+            return new Tablebase(sections, maxWhites, maxBlacks);
+        }
+    }
+
+    /**
+     * Return the largest number of white pieces other than the king in
+     * the positions I cover.
+     */
+    int maxWhites() {
+        return _maxWhites;
+    }
+
+    /**
+     * Return the largest number of black pieces in the positions I
+     * cover.
+     */
+    int maxBlacks() {
+        return _maxBlacks;
+    }
+
+    /**
+     * Return the value of BOARD for the side to move (see the class
+     * comment), or UNKNOWN if I do not cover it or the game is over.
+     */
+    int probe(Board board) {
+        Square king = board.kingPosition();
+        int whites = board.pieceCount(WHITE),
+                blacks = board.pieceCount(BLACK);
+        if (board.winner() != null || king == null || king.isEdge()
+                || whites > _maxWhites || blacks > _maxBlacks) {
+            return UNKNOWN;
+        }
+        int[] map = SYMMETRIES[KING_SYMMETRY[king.index()]];
+        int[] whiteSquares = new int[whites],
+                blackSquares = new int[blacks];
+        int nw = 0, nb = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Piece p = board.get(i);
+            if (p == WHITE) {
+                whiteSquares[nw++] = map[i];
+            } else if (p == BLACK) {
+                blackSquares[nb++] = map[i];
+            }
+        }
+        Arrays.sort(whiteSquares);
+        Arrays.sort(blackSquares);
+        int kingSquare = map[king.index()];
+        long index = index(board.turn() == WHITE ? 0 : 1,
+                REGION_SLOT[kingSquare], KING_REGION.length,
+                pieceRank(kingSquare, whiteSquares, blackSquares),
+                pieceSets(whites, blacks));
+        return _sections[whites * (_maxBlacks + 1) + blacks]
+                .get((int) index) & 0xFF;
+    }
+
+    /**
+     * Return the best move on BOARD for the side to move according to
+     * me: the quickest win if it is winning and the slowest loss if it
+     * is losing.  Moves that lose at once by repeating a position or
+     * exceeding the move limit are avoided.  Return null if I do not
+     * cover BOARD or it is a draw, so that it needs searching.  Does not
+     * modify BOARD.
+     */
+    Move bestMove(Board board) {
+        int value = probe(board);
+        if (value == UNKNOWN || value == DRAW) {
+            return null;
+        }
+        Board copy = new Board(board);
+        Piece side = board.turn();
+        int[] moves = new int[MAX_MOVES];
+        int end = copy.legalMoves(side, moves, 0);
+        int best = 0, bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < end; i += 1) {
+            copy.makeMove(moves[i]);
+            int score;
+            if (copy.winner() != null) {
+                score = copy.winner() == side ? MOVE_SCALE : -MOVE_SCALE;
+            } else {
+                int reply = probe(copy);
+                if (reply == UNKNOWN || reply == DRAW) {
+                    score = 0;
+                } else if (isWin(reply)) {
+                    score = distance(reply) - MOVE_SCALE;
+                } else {
+                    score = MOVE_SCALE - distance(reply) - 1;
+                }
+            }
+            copy.undo();
+            if (score > bestScore) {
+                bestScore = score;
+                best = moves[i];
+            }
+        }
+        return best == 0 ? null : Move.mv(best);
+    }
+
+    /**
+     * Return true iff VALUE is a win for the side to move.
+     */
+    static boolean isWin(int value) {
+        return (value & 1) == 1;
+    }
+
+    /**
+     * Return true iff VALUE is a loss for the side to move.
+     */
+    static boolean isLoss(int value) {
+        return value > DRAW && (value & 1) == 0;
+    }
+
+    /**
+     * Return the number of plies to the end of the game for a VALUE that
+     * is a win or a loss.
+     */
+    static int distance(int value) {
+        return isWin(value) ? value : value - 2;
+    }
+
+    /**
+     * Return the value of a win in PLIES plies (odd), as closely as it
+     * can be represented.
+     */
+    static int win(int plies) {
+        return Math.min(plies, MAX_VALUE);
+    }
+
+    /**
+     * Return the value of a loss in PLIES plies (even), as closely as it
+     * can be represented.
+     */
+    static int loss(int plies) {
+        return Math.min(plies + 2, MAX_VALUE - 1);
+    }
+
+    /**
+     * Return the number of entries in the file's section for W whites
+     * and B blacks.
+     */
+    static long sectionSize(int w, int b) {
+        return 2L * KING_REGION.length * pieceSets(w, b);
+    }
+
+    /**
+     * Return the number of ways to place W whites and then B blacks on
+     * the squares not occupied by the king.
+     */
+    static long pieceSets(int w, int b) {
+        return BINOMIAL[NUM_SQUARES - 1][w] * BINOMIAL[NUM_SQUARES - 1 - w][b];
+    }
+
+    /**
+     * Return the index of the position with SIDE to move (0 for white, 1
+     * for black) and the king on the KINGSLOT-th of KINGSLOTS possible
+     * squares, whose other pieces have rank PIECERANK among SETS
+     * possible placements.
+     */
+    static long index(int side, int kingSlot, int kingSlots, long pieceRank,
+                      long sets) {
+        return ((long) side * kingSlots + kingSlot) * sets + pieceRank;
+    }
+
+    /**
+     * Return the rank of the placement of whites on the squares WHITES
+     * and blacks on the squares BLACKS, given the king on the square with
+     * index KING.  WHITES and BLACKS hold square indices in increasing
+     * order.  Whites are ranked among the squares other than KING and
+     * blacks among the squares that remain, each set in colexicographic
+     * order.
+     */
+    static long pieceRank(int king, int[] whites, int[] blacks) {
+        long whiteRank = 0, blackRank = 0;
+        for (int i = 0; i < whites.length; i += 1) {
+            int a = whites[i] - (king < whites[i] ? 1 : 0);
+            whiteRank += BINOMIAL[a][i + 1];
+        }
+        for (int i = 0; i < blacks.length; i += 1) {
+            int a = blacks[i] - (king < blacks[i] ? 1 : 0);
+            for (int white : whites) {
+                if (white < blacks[i]) {
+                    a -= 1;
+                }
+            }
+            blackRank += BINOMIAL[a][i + 1];
+        }
+        return whiteRank * BINOMIAL[NUM_SQUARES - 1 - whites.length]
+                [blacks.length] + blackRank;
+    }
+
+    /**
+     * Set WHITES and BLACKS to the squares, in increasing order, of the
+     * placement with rank RANK (as from pieceRank) given the king on the
+     * square with index KING.  The lengths of WHITES and BLACKS give the
+     * numbers of pieces.
+     */
+    static void unrankPieces(long rank, int king, int[] whites,
+                             int[] blacks) {
+        long blackSets = BINOMIAL[NUM_SQUARES - 1 - whites.length]
+                [blacks.length];
+        unrankSet(rank / blackSets, whites);
+        for (int i = 0; i < whites.length; i += 1) {
+            if (whites[i] >= king) {
+                whites[i] += 1;
+            }
+        }
+        unrankSet(rank % blackSets, blacks);
+        for (int i = 0; i < blacks.length; i += 1) {
+            int s = blacks[i];
+            boolean passedKing = false;
+            int j = 0;
+            while (true) {
+                if (!passedKing && king <= s
+                        && (j == whites.length || king < whites[j])) {
+                    passedKing = true;
+                } else if (j < whites.length && whites[j] <= s) {
+                    j += 1;
+                } else {
+                    break;
+                }
+                s += 1;
+            }
+            blacks[i] = s;
+        }
+    }
+
+    /**
+     * Set SET to the elements, in increasing order, of the set with
+     * colexicographic rank RANK among the sets of SET.length
+     * non-negative integers.
+     */
+    private static void unrankSet(long rank, int[] set) {
+        for (int k = set.length; k > 0; k -= 1) {
+            int a = k - 1;
+            while (BINOMIAL[a + 1][k] <= rank) {
+                a += 1;
+            }
+            set[k - 1] = a;
+            rank -= BINOMIAL[a][k];
+        }
+    }
+
+    /**
+     * Scale of the scores bestMove gives to moves: wins score near
+     * MOVE_SCALE and losses near -MOVE_SCALE.
+     */
+    private static final int MOVE_SCALE = 1000;
+
+    /**
+     * The largest value that fits in one entry.
+     */
+    private static final int MAX_VALUE = 255;
+
+    /**
+     * My sections, one for each number of whites and blacks.
+     */
+    private final ByteBuffer[] _sections;
+
+    /**
+     * The largest numbers of whites (not counting the king) and blacks
+     * in the positions I cover.
+     */
+    private final int _maxWhites, _maxBlacks;
+}
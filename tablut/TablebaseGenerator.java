@@ -0,0 +1,683 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static tablut.Board.MAX_MOVES;
+import static tablut.Board.THRONE;
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.ROOK_INDICES;
+import static tablut.Square.sq;
+import static tablut.Tablebase.*;
+import static tablut.Utils.*;
+
+/**
+ * Solves all positions with up to a given number of whites and blacks
+ * besides the king by retrograde analysis, and writes them as a
+ * Tablebase file.
+ *
+ * Material classes (numbers of whites and blacks) are solved in the
+ * order they appear in the file, so that the classes a capture leads
+ * to are solved before the class it starts from.  Within a class,
+ * positions are numbered as in the file, except that the king may be on
+ * any of the INTERIOR_SQUARES squares off the edge; reducing by symmetry
+ * only when writing keeps the move counting below exact.
+ *
+ * First, every move from every position is made once on a Board, which
+ * decides all the rules.  Moves that end the game or capture (and so
+ * leave the class) have known values; the rest are counted.  Then
+ * positions are resolved in order of distance to the end of the game,
+ * working backward: a position lost in D plies makes each of its
+ * predecessors (found by unmaking moves) a win in D + 1, and a position
+ * won in D plies uses up one of each predecessor's counted moves, so
+ * that a predecessor whose moves are all used up, and which had no
+ * drawn or winning way out of the class, is lost.  Positions never
+ * resolved are draws.
+ *
+ * @author Junyi Cao
+ */
+public class TablebaseGenerator {
+
+    /**
+     * Usage: java tablut.TablebaseGenerator [WHITES [BLACKS [FILE]]].
+     * Solves all positions with up to WHITES whites other than the king
+     * (default 1) and BLACKS blacks (default 2), and writes them to FILE
+     * (default tablut.tb).
+     */
+    public static void main(String... args) {
+        int whites = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int blacks = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        String fileName = args.length > 2 ? args[2] : "tablut.tb";
+        TablebaseGenerator generator =
+                new TablebaseGenerator(whites, blacks);
+        generator.solve(System.out);
+        try {
+            generator.write(fileName);
+        } catch (IOException excp) {
+            System.err.printf("Could not write %s: %s%n", fileName,
+                    excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A generator for the positions with up to MAXWHITES whites other
+     * than the king and MAXBLACKS blacks.  Refuses at once piece counts
+     * that give some class more positions than an array can hold.
+     */
+    TablebaseGenerator(int maxWhites, int maxBlacks) {
+        if (maxWhites < 0 || maxBlacks < 0
+                || maxWhites > MAX_PIECES || maxBlacks > MAX_PIECES) {
+            throw error("piece counts must be between 0 and %d",
+                    MAX_PIECES);
+        }
+        for (int w = 0; w <= maxWhites; w += 1) {
+            for (int b = 0; b <= maxBlacks; b += 1) {
+                if (classSize(w, b) > MAX_CLASS_SIZE) {
+                    throw error("too many positions with %d whites and %d"
+                            + " blacks", w, b);
+                }
+            }
+        }
+        _maxWhites = maxWhites;
+        _maxBlacks = maxBlacks;
+        _values = new byte[(maxWhites + 1) * (maxBlacks + 1)][];
+    }
+
+    /**
+     * Solve every class, reporting progress on OUT if it is not null.
+     */
+    void solve(PrintStream out) {
+        if (out != null) {
+            out.printf("%7s %7s %12s %12s %12s %12s %8s%n", "whites",
+                    "blacks", "positions", "wins", "losses", "draws",
+                    "longest");
+        }
+        for (int w = 0; w <= _maxWhites; w += 1) {
+            for (int b = 0; b <= _maxBlacks; b += 1) {
+                solve(w, b);
+                if (out != null) {
+                    report(out, w, b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the solved classes to the file named FILENAME in the format
+     * read by Tablebase.load.
+     */
+    void write(String fileName) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_maxWhites);
+            out.writeInt(_maxBlacks);
+            for (int w = 0; w <= _maxWhites; w += 1) {
+                for (int b = 0; b <= _maxBlacks; b += 1) {
+                    writeSection(out, w, b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the section for W whites and B blacks to OUT: the value of
+     * each position whose king is in KING_REGION.
+     */
+    private void writeSection(DataOutputStream out, int w, int b)
+        throws IOException {
+        byte[] values = _values[w * (_maxBlacks + 1) + b];
+        long sets = pieceSets(w, b);
+        for (int side = 0; side < 2; side += 1) {
+            for (int king : KING_REGION) {
+                for (long rank = 0; rank < sets; rank += 1) {
+                    out.writeByte(values[(int) index(side,
+                            INTERIOR_SLOT[king], INTERIOR_SQUARES,
+                            rank, sets)]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the value (as in Tablebase) of the position with W whites
+     * and B blacks whose index among all positions of its class (with
+     * the king anywhere off the edge) is INDEX.  Its class must have
+     * been solved.
+     */
+    int value(int w, int b, int index) {
+        return _values[w * (_maxBlacks + 1) + b][index] & 0xFF;
+    }
+
+    /**
+     * Return the index of the position on BOARD among all positions of
+     * its class, assuming it has a king off the edge.
+     */
+    static int fullIndex(Board board) {
+        int w = board.pieceCount(WHITE), b = board.pieceCount(BLACK);
+        int[] whites = new int[w], blacks = new int[b];
+        int nw = 0, nb = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Piece p = board.get(i);
+            if (p == WHITE) {
+                whites[nw++] = i;
+            } else if (p == BLACK) {
+                blacks[nb++] = i;
+            }
+        }
+        int king = board.kingPosition().index();
+        return (int) index(board.turn() == WHITE ? 0 : 1,
+                INTERIOR_SLOT[king], INTERIOR_SQUARES,
+                pieceRank(king, whites, blacks), pieceSets(w, b));
+    }
+
+    /**
+     * Return the number of positions with W whites and B blacks, with
+     * either side to move and the king anywhere off the edge.
+     */
+    private static long classSize(int w, int b) {
+        return 2L * INTERIOR_SQUARES * pieceSets(w, b);
+    }
+
+    /**
+     * The largest number of positions in a class that can be solved,
+     * limited by the largest array.
+     */
+    private static final long MAX_CLASS_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Solve all positions with W whites and B blacks.
+     */
+    private void solve(int w, int b) {
+        long sets = pieceSets(w, b);
+        long size = classSize(w, b);
+        _w = w;
+        _b = b;
+        _sets = sets;
+        _whites = new int[w];
+        _blacks = new int[b];
+        _movedWhites = new int[w];
+        _movedBlacks = new int[b];
+        _value = new byte[(int) size];
+        _moves = new short[(int) size];
+        _longest = new byte[(int) size];
+        _wins = new ArrayList<>();
+        _losses = new ArrayList<>();
+
+        for (int index = 0; index < size; index += 1) {
+            countMoves(index);
+        }
+        for (int d = 0; d < _wins.size() || d < _losses.size(); d += 1) {
+            IntList losses = bucket(_losses, d);
+            for (int i = 0; i < losses.size(); i += 1) {
+                resolveLoss(losses.get(i), d);
+            }
+            losses.clear();
+            IntList wins = bucket(_wins, d);
+            for (int i = 0; i < wins.size(); i += 1) {
+                resolveWin(wins.get(i), d);
+            }
+            wins.clear();
+        }
+
+        _values[w * (_maxBlacks + 1) + b] = _value;
+        _moves = null;
+        _longest = null;
+        _wins = _losses = null;
+    }
+
+    /**
+     * Make every move from the position with index INDEX of the current
+     * class.  Queue the position as a win if some move wins outright or
+     * captures into a lost position, and as a loss if it has no moves or
+     * every move captures into a won position.  Otherwise record the
+     * number of moves that stay in the class.
+     */
+    private void countMoves(int index) {
+        if (!setUp(index)) {
+            _moves[index] = RESOLVED;
+            return;
+        }
+        Piece side = _board.turn();
+        int end = _board.legalMoves(side, _moveBuffer, 0);
+        int count = 0, flags = 0, longest = 0, quickest = Integer.MAX_VALUE;
+        for (int i = 0; i < end; i += 1) {
+            _board.makeMove(_moveBuffer[i]);
+            if (_board.winner() != null) {
+                quickest = 1;
+                _board.undo();
+                break;
+            } else if (_board.pieceCount(WHITE) == _w
+                    && _board.pieceCount(BLACK) == _b) {
+                count += 1;
+            } else {
+                int reply = value(_board.pieceCount(WHITE),
+                        _board.pieceCount(BLACK), fullIndex(_board));
+                if (reply == DRAW) {
+                    flags |= DRAW_EXIT;
+                } else if (isWin(reply)) {
+                    longest = Math.max(longest, distance(reply) + 1);
+                } else {
+                    quickest = Math.min(quickest, distance(reply) + 1);
+                }
+            }
+            _board.undo();
+        }
+        _longest[index] = (byte) Math.min(longest, MAX_DISTANCE);
+        if (quickest != Integer.MAX_VALUE) {
+            flags |= WIN_EXIT;
+            bucket(_wins, quickest).add(index);
+        } else if (count == 0 && flags == 0) {
+            bucket(_losses, longest).add(index);
+        }
+        _moves[index] = (short) (count | flags);
+    }
+
+    /**
+     * Record that the position with index INDEX, unless already resolved,
+     * is lost in D plies, and queue its unresolved predecessors as wins
+     * in D + 1.
+     */
+    private void resolveLoss(int index, int d) {
+        if ((_moves[index] & RESOLVED) != 0) {
+            return;
+        }
+        _moves[index] |= RESOLVED;
+        _value[index] = (byte) loss(d);
+        int end = predecessors(index);
+        for (int i = 0; i < end; i += 1) {
+            int pred = _predecessors[i];
+            if ((_moves[pred] & RESOLVED) == 0) {
+                _moves[pred] |= WIN_EXIT;
+                bucket(_wins, d + 1).add(pred);
+            }
+        }
+    }
+
+    /**
+     * Record that the position with index INDEX, unless already resolved,
+     * is won in D plies, and use up one counted move of each of its
+     * unresolved predecessors, queuing those left without a way to avoid
+     * losing.
+     */
+    private void resolveWin(int index, int d) {
+        if ((_moves[index] & RESOLVED) != 0) {
+            return;
+        }
+        _moves[index] |= RESOLVED;
+        _value[index] = (byte) win(d);
+        int end = predecessors(index);
+        for (int i = 0; i < end; i += 1) {
+            int pred = _predecessors[i];
+            int moves = _moves[pred];
+            if ((moves & RESOLVED) != 0) {
+                continue;
+            }
+            moves -= 1;
+            _moves[pred] = (short) moves;
+            int longest = Math.max(_longest[pred] & 0xFF, d + 1);
+            _longest[pred] = (byte) Math.min(longest, MAX_DISTANCE);
+            if (moves == 0) {
+                bucket(_losses, longest).add(pred);
+            }
+        }
+    }
+
+    /**
+     * Fill _predecessors with the indices of the positions of the current
+     * class from which a move that neither captures nor ends the game
+     * leads to the position with index INDEX, once for each such move,
+     * and return their number.
+     */
+    private int predecessors(int index) {
+        if (!setUp(index) || !_board.hasMove(_board.turn())) {
+            return 0;
+        }
+        Piece mover = _board.turn().opponent();
+        _board.setTurn(mover);
+        int count = 0;
+        if (mover == WHITE) {
+            count = unmoves(_king, KING, -1, count);
+            for (int i = 0; i < _w; i += 1) {
+                count = unmoves(_whites[i], WHITE, i, count);
+            }
+        } else {
+            for (int i = 0; i < _b; i += 1) {
+                count = unmoves(_blacks[i], BLACK, i, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Add to _predecessors, starting at index COUNT, the indices of the
+     * positions in which PIECE (the K-th of its color, or the king)
+     * stood elsewhere on a line through the square with index TO, from
+     * which it can move to TO without capturing or ending the game.
+     * _board holds the current position with the other side to move,
+     * who has a legal move.  A move can capture only pieces next to its
+     * destination, so moves are made on _board only when there are
+     * enemies there.  Return the new number of predecessors.
+     */
+    private int unmoves(int to, Piece piece, int k, int count) {
+        boolean enemyNear = false;
+        for (int[] ray : ROOK_INDICES[to]) {
+            if (ray.length > 0 && _board.get(ray[0]) != EMPTY
+                    && _board.get(ray[0]).side() != piece.side()) {
+                enemyNear = true;
+            }
+        }
+        for (int[] ray : ROOK_INDICES[to]) {
+            for (int from : ray) {
+                if (_board.get(from) != EMPTY) {
+                    break;
+                }
+                if (piece == KING ? sq(from).isEdge()
+                        : from == THRONE_INDEX) {
+                    continue;
+                }
+                if (!enemyNear) {
+                    _predecessors[count++] = movedIndex(piece, k, from);
+                    continue;
+                }
+                _board.put(EMPTY, sq(to));
+                _board.put(piece, sq(from));
+                _board.clearUndo();
+                _board.makeMove((from << 7) | to);
+                boolean quiet = _board.winner() == null
+                        && _board.pieceCount(WHITE) == _w
+                        && _board.pieceCount(BLACK) == _b;
+                _board.undo();
+                if (quiet) {
+                    _predecessors[count++] = movedIndex(piece, k, from);
+                }
+                _board.put(EMPTY, sq(from));
+                _board.put(piece, sq(to));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the index of the current position (as set up by setUp) with
+     * PIECE, the K-th of its color or the king, moved to the square with
+     * index FROM, and the other side to move.
+     */
+    private int movedIndex(Piece piece, int k, int from) {
+        int king = _king;
+        System.arraycopy(_whites, 0, _movedWhites, 0, _w);
+        System.arraycopy(_blacks, 0, _movedBlacks, 0, _b);
+        if (piece == KING) {
+            king = from;
+        } else {
+            int[] squares = piece == WHITE ? _movedWhites : _movedBlacks;
+            squares[k] = from;
+            Arrays.sort(squares);
+        }
+        return (int) index(_side ^ 1, INTERIOR_SLOT[king], INTERIOR_SQUARES,
+                pieceRank(king, _movedWhites, _movedBlacks), _sets);
+    }
+
+    /**
+     * Put the position with index INDEX of the current class on _board,
+     * with its undo history cleared, and record its pieces in _side,
+     * _king, _whites and _blacks.  Return false, leaving _board
+     * unspecified, if the position cannot occur because a piece other
+     * than the king is on the throne.
+     */
+    private boolean setUp(int index) {
+        long rank = index % _sets;
+        int slot = (int) (index / _sets % INTERIOR_SQUARES);
+        _side = (int) (index / _sets / INTERIOR_SQUARES);
+        _king = INTERIOR_TO_INDEX[slot];
+        unrankPieces(rank, _king, _whites, _blacks);
+        if (Arrays.binarySearch(_whites, THRONE_INDEX) >= 0
+                || Arrays.binarySearch(_blacks, THRONE_INDEX) >= 0) {
+            return false;
+        }
+        for (int i = 0; i < _placed; i += 1) {
+            _board.put(EMPTY, sq(_placedSquares[i]));
+        }
+        _placed = 0;
+        place(KING, _king);
+        for (int s : _whites) {
+            place(WHITE, s);
+        }
+        for (int s : _blacks) {
+            place(BLACK, s);
+        }
+        _board.setTurn(_side == 0 ? WHITE : BLACK);
+        _board.clearUndo();
+        return true;
+    }
+
+    /**
+     * Put PIECE on the square with index S of _board, remembering to
+     * clear it before the next position is set up.
+     */
+    private void place(Piece piece, int s) {
+        _board.put(piece, sq(s));
+        _placedSquares[_placed++] = s;
+    }
+
+    /**
+     * Print the results for W whites and B blacks on OUT.
+     */
+    private void report(PrintStream out, int w, int b) {
+        byte[] values = _values[w * (_maxBlacks + 1) + b];
+        long wins = 0, losses = 0, draws = 0;
+        int longest = 0;
+        for (byte v : values) {
+            int value = v & 0xFF;
+            if (value == DRAW) {
+                draws += 1;
+            } else {
+                if (isWin(value)) {
+                    wins += 1;
+                } else {
+                    losses += 1;
+                }
+                longest = Math.max(longest, distance(value));
+            }
+        }
+        out.printf("%7d %7d %12d %12d %12d %12d %8d%n", w, b,
+                values.length, wins, losses, draws, longest);
+    }
+
+    /**
+     * Return BUCKETS[D], creating it and any before it if needed.
+     */
+    private static IntList bucket(List<IntList> buckets, int d) {
+        while (buckets.size() <= d) {
+            buckets.add(new IntList());
+        }
+        return buckets.get(d);
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static final class IntList {
+
+        /**
+         * Add X to the end of me.
+         */
+        void add(int x) {
+            if (_size == _items.length) {
+                _items = Arrays.copyOf(_items, 2 * _size);
+            }
+            _items[_size++] = x;
+        }
+
+        /**
+         * Return my K-th element.
+         */
+        int get(int k) {
+            return _items[k];
+        }
+
+        /**
+         * Return my number of elements.
+         */
+        int size() {
+            return _size;
+        }
+
+        /**
+         * Remove all my elements and release their storage.
+         */
+        void clear() {
+            _items = new int[INITIAL_CAPACITY];
+            _size = 0;
+        }
+
+        /**
+         * Initial capacity of the list.
+         */
+        private static final int INITIAL_CAPACITY = 16;
+
+        /**
+         * My elements, in _items[0 .. _size-1].
+         */
+        private int[] _items = new int[INITIAL_CAPACITY];
+
+        /**
+         * My number of elements.
+         */
+        private int _size;
+    }
+
+    /**
+     * Flags kept in _moves beside the count of moves that stay in the
+     * class: the position is resolved, it has a move out of the class
+     * that wins or draws, or it has a move that draws.
+     */
+    private static final int RESOLVED = 1 << 14, WIN_EXIT = 1 << 13,
+            DRAW_EXIT = 1 << 12;
+
+    /**
+     * Longest distance recorded while solving.
+     */
+    private static final int MAX_DISTANCE = 255;
+
+    /**
+     * Index of the throne square.
+     */
+    private static final int THRONE_INDEX = THRONE.index();
+
+    /**
+     * INTERIOR_TO_INDEX[k] is the index of the square with INTERIOR_SLOT
+     * k.
+     */
+    private static final int[] INTERIOR_TO_INDEX =
+            new int[INTERIOR_SQUARES];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            if (INTERIOR_SLOT[i] >= 0) {
+                INTERIOR_TO_INDEX[INTERIOR_SLOT[i]] = i;
+            }
+        }
+    }
+
+    /**
+     * Largest numbers of whites and blacks solved.
+     */
+    private final int _maxWhites, _maxBlacks;
+
+    /**
+     * The values of the positions of each solved class, by class (as
+     * in the file) and then by index among all positions of the class.
+     */
+    private final byte[][] _values;
+
+    /**
+     * The board on which positions are set up and moves made.
+     */
+    private final Board _board = emptyBoard();
+
+    /**
+     * Scratch space for the moves from a position.
+     */
+    private final int[] _moveBuffer = new int[MAX_MOVES];
+
+    /**
+     * Scratch space for the predecessors of a position.
+     */
+    private final int[] _predecessors = new int[MAX_MOVES];
+
+    /**
+     * The squares of _board that hold pieces.
+     */
+    private final int[] _placedSquares = new int[NUM_SQUARES];
+
+    /**
+     * The number of squares in _placedSquares.
+     */
+    private int _placed;
+
+    /**
+     * The numbers of whites and blacks in the class being solved.
+     */
+    private int _w, _b;
+
+    /**
+     * The number of ways to place the pieces of the class being solved
+     * for each king square.
+     */
+    private long _sets;
+
+    /**
+     * The side to move (0 for white) and king square of the position
+     * set up by setUp.
+     */
+    private int _side, _king;
+
+    /**
+     * The white and black squares, in increasing order, of the position
+     * set up by setUp.
+     */
+    private int[] _whites, _blacks;
+
+    /**
+     * Scratch space for the squares of a predecessor.
+     */
+    private int[] _movedWhites, _movedBlacks;
+
+    /**
+     * While solving a class: the value of each position, and the
+     * longest loss found for it so far.
+     */
+    private byte[] _value, _longest;
+
+    /**
+     * While solving a class: for each position, the number of its moves
+     * within the class whose results are unknown, and flags.
+     */
+    private short[] _moves;
+
+    /**
+     * While solving a class: _wins[D] and _losses[D] are the positions
+     * queued to be resolved as wins and losses in D plies.
+     */
+    private List<IntList> _wins, _losses;
+
+    /**
+     * Return a board with no pieces on it.
+     */
+    private static Board emptyBoard() {
+        Board board = new Board();
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            board.put(EMPTY, sq(i));
+        }
+        return board;
+    }
+}
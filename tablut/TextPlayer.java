@@ -57,4 +57,9 @@ class TextPlayer extends Player {
             return line;
         }
     }
+
+    @Override
+    String pollCommand() {
+        return _controller.pollLine();
+    }
 }
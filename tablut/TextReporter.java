@@ -1,5 +1,7 @@
 package tablut;
 
+import java.io.PrintStream;
+
 /**
  * A Reporter that uses the standard output for messaeges.
  *
@@ -7,20 +9,47 @@ package tablut;
  */
 class TextReporter implements Reporter {
 
+    /**
+     * A TextReporter that writes errors to the standard error and other
+     * messages to the standard output.
+     */
+    TextReporter() {
+        this(System.out, System.err);
+    }
+
+    /**
+     * A TextReporter that writes errors to ERR and other messages to
+     * OUT.
+     */
+    TextReporter(PrintStream out, PrintStream err) {
+        _out = out;
+        _err = err;
+    }
+
     @Override
     public void reportError(String fmt, Object... args) {
-        System.err.printf(fmt, args);
-        System.err.println();
+        _err.printf(fmt, args);
+        _err.println();
     }
 
     @Override
     public void reportNote(String fmt, Object... args) {
-        System.out.printf("* " + fmt, args);
-        System.out.println();
+        _out.printf("* " + fmt, args);
+        _out.println();
     }
 
     @Override
     public void reportMove(Move move) {
-        System.out.printf("* %s%n", move);
+        _out.printf("* %s%n", move);
     }
+
+    /**
+     * Where I write messages other than errors.
+     */
+    private final PrintStream _out;
+
+    /**
+     * Where I write errors.
+     */
+    private final PrintStream _err;
 }
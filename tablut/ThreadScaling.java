@@ -0,0 +1,66 @@
+package tablut;
+
+import static tablut.Move.mv;
+
+/**
+ * Reports how the AI's search speed scales with its number of threads.
+ * For each thread count from 1 to N, searches a few fixed positions for
+ * a fixed time with a fresh AI and prints the positions visited per
+ * second, and that rate relative to one thread.  It also prints the
+ * moves chosen, so that different engines can be compared on the same
+ * positions.
+ *
+ * @author Junyi Cao
+ */
+public class ThreadScaling {
+
+    /**
+     * Usage: java tablut.ThreadScaling [N [MILLIS [ENGINE]]].  N
+     * defaults to the number of available processors, MILLIS, the
+     * search time per position, to 2000, and ENGINE (smp or ybwc) to
+     * smp.
+     */
+    public static void main(String... args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        int millis = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        AI.Engine engine = args.length > 2
+                ? AI.Engine.valueOf(args[2].toUpperCase()) : AI.Engine.SMP;
+
+        System.out.printf("%7s %12s %12s %8s  %s%n",
+                "threads", "nodes", "nodes/sec", "speedup", "moves");
+        double base = 0;
+        for (int threads = 1; threads <= maxThreads; threads += 1) {
+            long nodes = 0, nanos = 0;
+            StringBuilder moves = new StringBuilder();
+            for (String[] opening : POSITIONS) {
+                Board board = new Board();
+                for (String move : opening) {
+                    board.makeMove(mv(move));
+                }
+                AI ai = new AI(TranspositionTable.DEFAULT_MEGABYTES,
+                        threads, engine);
+                long start = System.nanoTime();
+                moves.append(' ').append(ai.findMove(board, millis));
+                nanos += System.nanoTime() - start;
+                nodes += ai.nodes();
+            }
+            double rate = nodes * 1e9 / nanos;
+            if (threads == 1) {
+                base = rate;
+            }
+            System.out.printf("%7d %12d %12.0f %8.2f %s%n",
+                    threads, nodes, rate, rate / base, moves);
+        }
+    }
+
+    /**
+     * The positions searched, as the moves leading to them from the
+     * initial position.
+     */
+    private static final String[][] POSITIONS = {
+        {},
+        {"f1-3", "e6-f", "d1-3", "e4-h", "i6-7"},
+        {"h5-3", "e6-g", "f9-7", "f5-3", "d9-7", "e5-6"}
+    };
+}
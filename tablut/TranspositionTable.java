@@ -0,0 +1,160 @@
+package tablut;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size cache of search results, indexed by position keys.  The
+ * searches key it by Board.canonicalKey(), so that the (up to eight)
+ * symmetric images of a position share one entry.  The table is a
+ * power-of-two number of two-slot buckets held in two arrays of
+ * primitives: slot 0 of a bucket keeps the deepest result seen for it
+ * and slot 1 is always replaced.  Each result is packed into one
+ * long (see probe), so the table holds no per-entry objects.
+ *
+ * Several threads may use one table without locking.  Each slot holds
+ * its key XORed with its entry, so that a slot torn by simultaneous
+ * writes (one thread's key with another's entry) fails to match either
+ * key and reads as a miss.
+ *
+ * @author Junyi Cao
+ */
+final class TranspositionTable {
+
+    /**
+     * Bound types: the stored score is the exact value of the position,
+     * a lower bound on it, or an upper bound on it.
+     */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /**
+     * Value returned by probe when a key is not in the table.
+     */
+    static final long MISS = 0;
+
+    /**
+     * Default table size in megabytes.
+     */
+    static final int DEFAULT_MEGABYTES = 16;
+
+    /**
+     * A table occupying at most MEGABYTES megabytes (and at least one
+     * bucket).
+     */
+    TranspositionTable(int megabytes) {
+        long entries = Math.max(2, ((long) megabytes << 20) / ENTRY_BYTES);
+        int size = Integer.highestOneBit(
+                (int) Math.min(entries, 1 << MAX_LOG_SIZE));
+        _keys = new long[size];
+        _entries = new long[size];
+        _mask = (size - 1) & ~1;
+    }
+
+    /**
+     * Return the packed entry stored for KEY, or MISS if there is none.
+     * Use score, move, depth and bound to unpack it.
+     */
+    long probe(long key) {
+        int i = (int) key & _mask;
+        long entry = _entries[i];
+        if (entry != MISS && (_keys[i] ^ entry) == key) {
+            return entry;
+        }
+        entry = _entries[i + 1];
+        if (entry != MISS && (_keys[i + 1] ^ entry) == key) {
+            return entry;
+        }
+        return MISS;
+    }
+
+    /**
+     * Record that the position with KEY, searched to DEPTH plies, has
+     * score SCORE, which is a BOUND (EXACT, LOWER or UPPER), and best
+     * move MOVE (a packed move as by Move.packed(), or 0 if none).
+     */
+    void store(long key, int depth, int bound, int score, int move) {
+        long entry = (score & 0xFFFFFFFFL)
+                | ((long) move << MOVE_SHIFT)
+                | ((long) Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | VALID;
+        int i = (int) key & _mask;
+        long old = _entries[i];
+        if (old == MISS || (_keys[i] ^ old) == key
+                || depth >= depth(old)) {
+            _keys[i] = key ^ entry;
+            _entries[i] = entry;
+        } else {
+            _keys[i + 1] = key ^ entry;
+            _entries[i + 1] = entry;
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear() {
+        Arrays.fill(_entries, MISS);
+    }
+
+    /**
+     * Return the score in ENTRY.
+     */
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Return the packed best move in ENTRY, or 0 if none was recorded.
+     */
+    static int move(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) & MOVE_MASK;
+    }
+
+    /**
+     * Return the search depth in ENTRY.
+     */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    /**
+     * Return the bound type in ENTRY.
+     */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 3;
+    }
+
+    /**
+     * Bytes used by one slot.
+     */
+    private static final int ENTRY_BYTES = 16;
+    /**
+     * Log base 2 of the largest number of slots.
+     */
+    private static final int MAX_LOG_SIZE = 30;
+    /**
+     * Layout of a packed entry: the score in the low 32 bits, then a
+     * 14-bit move, an 8-bit depth, a 2-bit bound, and a bit that is set
+     * in every stored entry so that none equals MISS.
+     */
+    private static final int MOVE_SHIFT = 32, MOVE_MASK = (1 << 14) - 1,
+            DEPTH_SHIFT = 46, MAX_DEPTH = (1 << 8) - 1,
+            BOUND_SHIFT = 54;
+    /**
+     * The valid bit of a packed entry.
+     */
+    private static final long VALID = 1L << 56;
+
+    /**
+     * The key held in each slot, XORed with the slot's entry.
+     */
+    private final long[] _keys;
+    /**
+     * The packed entry held in each slot, or MISS.
+     */
+    private final long[] _entries;
+    /**
+     * Mask selecting the first slot of a key's bucket.
+     */
+    private final int _mask;
+}
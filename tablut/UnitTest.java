@@ -17,7 +17,8 @@ public class UnitTest {
         textui.runClasses(
                 BoardTest.class,
                 TablutTests.class,
-                AITest.class);
+                AITest.class,
+                ServerTest.class);
     }
 }
 
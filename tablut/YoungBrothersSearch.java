@@ -0,0 +1,377 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static tablut.AI.*;
+import static tablut.Board.MAX_MOVES;
+import static tablut.Move.mv;
+import static tablut.Move.transform;
+import static tablut.Piece.*;
+import static tablut.Searcher.fromTable;
+import static tablut.Searcher.isWin;
+import static tablut.Searcher.toTable;
+import static tablut.Square.INVERSE_SYMMETRIES;
+import static tablut.TranspositionTable.*;
+
+/**
+ * A parallel alpha-beta search by the Young Brothers Wait method, on a
+ * ForkJoinPool.  At each node at least SPLIT_DEPTH plies above the
+ * horizon, the first (eldest) move is searched alone; if it does not
+ * cause a cutoff, the remaining moves are forked as separate tasks on
+ * copies of the board, all narrowing their windows from the node's
+ * shared alpha as results come in.  A cutoff cancels the brothers still
+ * running.  Nodes nearer the horizon (other than the root, which always
+ * records its best move) are searched serially by a Searcher belonging
+ * to the worker thread.
+ *
+ * @author Junyi Cao
+ */
+final class YoungBrothersSearch {
+
+    /**
+     * A search with THREADS worker threads that records its results in
+     * TABLE, and stops when STOP is set.
+     */
+    YoungBrothersSearch(TranspositionTable table, int threads,
+                        AtomicBoolean stop) {
+        _table = table;
+        _stop = stop;
+        _pool = new ForkJoinPool(threads);
+        _timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tablut-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        _searcher = ThreadLocal.withInitial(() -> {
+            Searcher searcher = new Searcher(_table, _stop);
+            _searchers.add(searcher);
+            return searcher;
+        });
+    }
+
+    /**
+     * Return a move from position BOARD for SENSE (1 for white, -1 for
+     * black), who is to move, assuming there is a move.  Searches by
+     * iterative deepening to MAXDEPTH plies, stopping after LIMIT
+     * milliseconds if LIMIT > 0, and returns the move found by the
+     * deepest search that completed, or null if it was stopped before
+     * any did.  The caller clears the stop flag first.  Does not modify
+     * BOARD.
+     */
+    Move findMove(Board board, int sense, int maxDepth, int limit) {
+        long start = System.nanoTime();
+        _completedDepth = 0;
+        _value = 0;
+        synchronized (_searchers) {
+            for (Searcher searcher : _searchers) {
+                searcher.clearStats();
+                searcher.orderer().newSearch();
+            }
+        }
+        ScheduledFuture<?> alarm = null;
+        Move best = null;
+        for (int depth = 1; depth <= maxDepth; depth += 1) {
+            Split root = new Split(null, new Board(board), depth, 0, sense,
+                    -INFTY, INFTY);
+            int value = _pool.invoke(root);
+            if (root._aborted) {
+                break;
+            }
+            best = root._bestMove;
+            _completedDepth = depth;
+            _value = value;
+            if (isWin(value)) {
+                break;
+            }
+            if (limit > 0 && alarm == null) {
+                long left = limit * 1_000_000L - (System.nanoTime() - start);
+                if (left <= 0) {
+                    break;
+                }
+                alarm = _timer.schedule(() -> _stop.set(true), left,
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+        if (alarm != null) {
+            alarm.cancel(false);
+        }
+        return best;
+    }
+
+    /**
+     * Add the counts of what the last call to findMove did, over all
+     * threads, to STATS.
+     */
+    void addStats(SearchStats stats) {
+        synchronized (_searchers) {
+            for (Searcher searcher : _searchers) {
+                stats.add(searcher.stats());
+            }
+        }
+    }
+
+    /**
+     * Return the depth of the deepest iteration completed by the last
+     * call to findMove, or 0 if none was.
+     */
+    int completedDepth() {
+        return _completedDepth;
+    }
+
+    /**
+     * Shut down my worker and timer threads.  I may not be used
+     * afterwards.
+     */
+    void close() {
+        _pool.shutdown();
+        _timer.shutdown();
+    }
+
+    /**
+     * Return the value, for the side to move, found by the deepest
+     * iteration completed by the last call to findMove, or 0 if none was.
+     */
+    int value() {
+        return _value;
+    }
+
+    /**
+     * The search of one node: a position, the depth to search it to, and
+     * the window to search it with.
+     */
+    private final class Split extends RecursiveTask<Integer> {
+
+        /**
+         * A search of BOARD, a child of PARENT (null at the root) that is
+         * PLY plies from the root, with SENSE to move, to DEPTH plies with
+         * window ALPHA .. BETA.  The Split owns BOARD for the duration.
+         */
+        Split(Split parent, Board board, int depth, int ply, int sense,
+              int alpha, int beta) {
+            _parent = parent;
+            _board = board;
+            _depth = depth;
+            _ply = ply;
+            _sense = sense;
+            _alpha = alpha;
+            _beta = beta;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (_parent != null) {
+                _beta = Math.min(_beta, -_parent._sharedAlpha);
+            }
+            Searcher searcher = _searcher.get();
+            if (_parent != null
+                    && (_depth < SPLIT_DEPTH || _board.winner() != null)) {
+                int value = searcher.searchNode(_board, _depth, _ply, _sense,
+                        _alpha, _beta, this::cancelled);
+                _aborted = searcher.stopped();
+                return value;
+            } else if (cancelled()) {
+                _aborted = true;
+                return 0;
+            }
+            SearchStats stats = searcher.stats();
+            stats._nodes += 1;
+
+            int symmetry = _board.canonicalSymmetry();
+            long key = _board.key(symmetry);
+            long entry = _table.probe(key);
+            stats._probes += 1;
+            if (entry != MISS) {
+                stats._hits += 1;
+            }
+            if (entry != MISS && _ply > 0 && depth(entry) >= _depth) {
+                int score = fromTable(score(entry), _ply);
+                if (bound(entry) == EXACT
+                        || bound(entry) == LOWER && score >= _beta
+                        || bound(entry) == UPPER && score <= _alpha) {
+                    return score;
+                }
+            }
+
+            int[] moves = new int[MAX_MOVES];
+            int end = _board.legalMoves(_sense == 1 ? WHITE : BLACK,
+                    moves, 0);
+            MoveOrderer orderer = searcher.orderer();
+            orderer.order(_board, moves, 0, end, entry == MISS ? 0
+                    : transform(move(entry), INVERSE_SYMMETRIES[symmetry]),
+                    _ply);
+
+            int alpha = _sharedAlpha = _alpha;
+            _board.makeMove(moves[0]);
+            Split eldest = new Split(this, _board, _depth - 1, _ply + 1,
+                    -_sense, -_beta, -alpha);
+            int bestValue = -eldest.compute();
+            _board.undo();
+            if (eldest._aborted) {
+                _aborted = true;
+                return 0;
+            }
+            int best = moves[0];
+            if (bestValue > alpha) {
+                alpha = _sharedAlpha = bestValue;
+            }
+
+            if (alpha < _beta) {
+                List<Split> brothers = new ArrayList<>();
+                for (int i = 1; i < end; i += 1) {
+                    Board copy = new Board(_board);
+                    copy.makeMove(moves[i]);
+                    Split brother = new Split(this, copy, _depth - 1,
+                            _ply + 1, -_sense, -_beta, -alpha);
+                    brother.fork();
+                    brothers.add(brother);
+                }
+                for (int i = 0; i < brothers.size(); i += 1) {
+                    Split brother = brothers.get(i);
+                    int value = -brother.join();
+                    if (_cutoff) {
+                        continue;
+                    } else if (brother._aborted) {
+                        _aborted = true;
+                        continue;
+                    }
+                    if (value > bestValue) {
+                        bestValue = value;
+                        best = moves[i + 1];
+                    }
+                    if (value > alpha) {
+                        alpha = _sharedAlpha = value;
+                    }
+                    if (alpha >= _beta) {
+                        _cutoff = true;
+                        stats._cutoffs += 1;
+                        orderer.cutoff(_board, moves[i + 1], _ply, _depth);
+                    }
+                }
+                if (_aborted) {
+                    return 0;
+                }
+            } else {
+                stats._cutoffs += 1;
+                stats._firstCutoffs += 1;
+                orderer.cutoff(_board, best, _ply, _depth);
+            }
+
+            int bound = bestValue <= _alpha ? UPPER
+                    : bestValue >= _beta ? LOWER : EXACT;
+            _table.store(key, _depth, bound, toTable(bestValue, _ply),
+                    transform(best, symmetry));
+            if (_parent == null) {
+                _bestMove = mv(best);
+            }
+            return bestValue;
+        }
+
+        /**
+         * Return true iff my result is no longer needed, because the
+         * whole search has been stopped or I or one of my ancestors has
+         * had a cutoff.
+         */
+        boolean cancelled() {
+            for (Split s = this; s != null; s = s._parent) {
+                if (s._cutoff) {
+                    return true;
+                }
+            }
+            return _stop.get();
+        }
+
+        /**
+         * My parent, or null if I am the root.
+         */
+        private final Split _parent;
+        /**
+         * The position I search.
+         */
+        private final Board _board;
+        /**
+         * Search depth, plies from the root, and side to move.
+         */
+        private final int _depth, _ply, _sense;
+        /**
+         * The window I was given.  _beta may narrow when I start, from
+         * my parent's _sharedAlpha.
+         */
+        private int _alpha, _beta;
+        /**
+         * The best value found so far among my children, as seen by my
+         * younger children when they start.
+         */
+        private volatile int _sharedAlpha = -INFTY;
+        /**
+         * True once one of my children has caused a cutoff, so that the
+         * rest are no longer needed.
+         */
+        private volatile boolean _cutoff;
+        /**
+         * True iff my search was abandoned, so that my value is
+         * meaningless.
+         */
+        private boolean _aborted;
+        /**
+         * At the root, the move found.
+         */
+        private Move _bestMove;
+    }
+
+    /**
+     * Nodes at least this many plies above the horizon are searched in
+     * parallel; the rest serially.
+     */
+    private static final int SPLIT_DEPTH = 3;
+
+    /**
+     * Results of searches, shared by all threads.
+     */
+    private final TranspositionTable _table;
+
+    /**
+     * Runs the Splits.
+     */
+    private final ForkJoinPool _pool;
+
+    /**
+     * Sets _stop when a timed search runs out of time.
+     */
+    private final ScheduledExecutorService _timer;
+
+    /**
+     * Set to stop the current search.
+     */
+    private final AtomicBoolean _stop;
+
+    /**
+     * The depth of the deepest iteration the current search completed.
+     */
+    private int _completedDepth;
+
+    /**
+     * The value found by that iteration.
+     */
+    private int _value;
+
+    /**
+     * Every Searcher created for a worker thread.
+     */
+    private final List<Searcher> _searchers =
+            Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The Searcher of each worker thread, for the nodes it searches
+     * serially.
+     */
+    private final ThreadLocal<Searcher> _searcher;
+}